@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.Insert.InsertParams;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Inserts values asynchronously, i.e. through the batch insert (write-behind) pipeline. The batchInsert parameter
+ * defaults to true for these benchmarks so that the TSL batch insert pipeline is enabled when Mango is initialized, see
+ * {@link TsdbBenchmark#BENCHMARK_DEFAULTS}.
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchInsert extends TsdbBenchmark {
+
+    /**
+     * Periodically estimates the number of values which have been enqueued but are not yet readable (the backlog).
+     * One point from each thread is sampled, the estimate is extrapolated to all points. The TSL batch insert pipeline
+     * does not expose its queue size, so this is an estimate rather than the size of the queue.
+     *
+     * <p>Each sample reads the latest value of the sampled points from the DAO while the benchmark threads are
+     * running, so sampling competes with the pipeline. Keep the interval long relative to the flush interval, or
+     * disable sampling to measure the throughput without this overhead.</p>
+     */
+    @State(Scope.Benchmark)
+    public static class QueueMonitor {
+
+        /**
+         * Interval (ms) between backlog samples, 0 disables sampling
+         */
+        @Param("1000")
+        long sampleInterval;
+
+        final List<SampledPoint> sampledPoints = new CopyOnWriteArrayList<>();
+        ScheduledExecutorService executor;
+
+        @Setup(Level.Iteration)
+        public void setupIteration(TsdbMockMango mango) {
+            if (sampleInterval > 0) {
+                this.executor = Executors.newSingleThreadScheduledExecutor();
+                executor.scheduleWithFixedDelay(() -> sample(mango), sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() throws InterruptedException {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+
+        private void sample(TsdbMockMango mango) {
+            if (sampledPoints.isEmpty()) {
+                return;
+            }
+            long totalBacklog = 0;
+            for (SampledPoint sampled : sampledPoints) {
+                long enqueuedUpTo = sampled.enqueuedUpTo;
+                long readableUpTo = mango.pvDao.getLatestPointValue(sampled.point)
+                        .map(v -> v.getTime() + mango.period)
+                        .orElse(sampled.startTimestamp);
+                totalBacklog += Math.max(0, (enqueuedUpTo - readableUpTo) / mango.period);
+            }
+            int pointsPerThread = mango.totalPoints / mango.threads;
+            double estimatedBacklog = (double) totalBacklog / sampledPoints.size() * pointsPerThread * mango.threads;
+            BenchmarkMetrics.sample("estimatedBacklog", estimatedBacklog);
+        }
+    }
+
+    static class SampledPoint {
+        final DataPointVO point;
+        final PointValueSource source;
+        final long startTimestamp;
+        volatile long enqueuedUpTo;
+
+        SampledPoint(DataPointVO point, PointValueSource source) {
+            this.point = point;
+            this.source = source;
+            this.startTimestamp = source.getTimestamp().toEpochMilli();
+            this.enqueuedUpTo = startTimestamp;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        /**
+         * Time (ms) after which an enqueue operation is counted as slow. The pipeline does not expose blocked or failed
+         * offers, a slow enqueue may be caused by back-pressure or by other delays (e.g. GC pauses).
+         */
+        @Param("10")
+        long slowEnqueueThreshold;
+
+        /**
+         * Time (ms) to wait for values to become readable before failing
+         */
+        @Param("60000")
+        long readableTimeout;
+
+        long slowEnqueueThresholdNanos;
+        SampledPoint sampledPoint;
+        SingleWriterRecorder enqueueRecorder;
+        SingleWriterRecorder readableRecorder;
+        /**
+         * time range [from, to) of the values enqueued in this invocation, by series id
+         */
+        final Map<Integer, long[]> written = new HashMap<>();
+
+        @Setup(Level.Trial)
+        public void setup(InsertParams insertParams, QueueMonitor queueMonitor) {
+            if (!insertParams.pointPool.isPartitioned()) {
+                throw new IllegalStateException("Batch insert benchmarks require pointAssignment=partitioned");
+            }
+            this.slowEnqueueThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowEnqueueThreshold);
+            this.enqueueRecorder = LatencyHistograms.createRecorder("enqueue");
+            this.readableRecorder = LatencyHistograms.createRecorder("readable");
+            this.sampledPoint = new SampledPoint(insertParams.points.get(0), insertParams.sources.get(0));
+            queueMonitor.sampledPoints.add(sampledPoint);
+        }
+
+        /**
+         * Enqueues a batch of values from the source.
+         */
+        void enqueue(TsdbMockMango mango, PointValueSource source) {
+            long start = System.nanoTime();
+            source.stream(mango.batchSize).forEach(v -> mango.pvDao.savePointValueAsync(v.getPoint(), v.getValue()));
+            long duration = System.nanoTime() - start;
+
+            enqueueRecorder.recordValue(duration);
+            if (duration > slowEnqueueThresholdNanos) {
+                BenchmarkMetrics.increment("slowEnqueues");
+                BenchmarkMetrics.add("slowEnqueueTimeMs", TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+            if (source == sampledPoint.source) {
+                sampledPoint.enqueuedUpTo = source.getTimestamp().toEpochMilli();
+            }
+        }
+
+        /**
+         * Polls until the expected number of values enqueued in this invocation are readable for the points. Only the
+         * values within the time range enqueued for each point are counted, not values enqueued earlier for the other
+         * points in the range [from, to).
+         */
+        void awaitReadable(TsdbMockMango mango, List<DataPointVO> points, long from, long to, long expected) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readableTimeout);
+            long[] count = new long[1];
+            while (true) {
+                count[0] = 0;
+                mango.pvDao.getPointValuesCombined(points, from, to, null, TimeOrder.ASCENDING, v -> {
+                    long[] range = written.get(v.getSeriesId());
+                    if (v.getTime() >= range[0] && v.getTime() < range[1]) {
+                        count[0]++;
+                    }
+                });
+                if (count[0] >= expected) {
+                    return;
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException(String.format("Only %d of %d values were readable after %d ms", count[0], expected, readableTimeout));
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    @Benchmark
+    public void enqueue(TsdbMockMango mango, InsertParams insertParams, Writer writer) {
+        for (int i = 0; i < mango.points; i++) {
+            writer.enqueue(mango, insertParams.next());
+        }
+    }
+
+    @Benchmark
+    public void endToEnd(TsdbMockMango mango, InsertParams insertParams, Writer writer) {
+        long start = System.nanoTime();
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+
+        List<DataPointVO> points = new ArrayList<>(mango.points);
+        writer.written.clear();
+        for (int i = 0; i < mango.points; i++) {
+            var source = insertParams.next();
+            long sourceFrom = source.getTimestamp().toEpochMilli();
+            writer.enqueue(mango, source);
+            long sourceTo = source.getTimestamp().toEpochMilli();
+            from = Math.min(from, sourceFrom);
+            to = Math.max(to, sourceTo);
+            points.add(source.getPoint());
+            writer.written.put(source.getPoint().getSeriesId(), new long[] {sourceFrom, sourceTo});
+        }
+
+        writer.awaitReadable(mango, points, from, to, (long) mango.points * mango.batchSize);
+        writer.readableRecorder.recordValue(System.nanoTime() - start);
+    }
+}
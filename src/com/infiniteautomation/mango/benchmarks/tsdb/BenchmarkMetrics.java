@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Registry of counters, rates, sampled gauges and one-off results which are recorded inside the benchmark JVM. The values
+ * are reset and converted to results by the {@link TsdbProfiler} after each iteration.
+ */
+public final class BenchmarkMetrics {
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> RATES = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+    private static final Queue<ScalarResult> RESULTS = new ConcurrentLinkedQueue<>();
+
+    private BenchmarkMetrics() {
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long value) {
+        COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Count operations which are reported per second of the iteration, e.g. the values written for each data type.
+     */
+    public static void addRate(String name, long value) {
+        RATES.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Record a sample of a value which varies over time, e.g. a queue depth.
+     */
+    public static void sample(String name, double value) {
+        GAUGES.computeIfAbsent(name, k -> new Gauge()).sample(value);
+    }
+
+    /**
+     * Record a one-off result, e.g. a measurement taken during setup. The result is reported for the next iteration.
+     */
+    public static void result(String name, double value, String unit) {
+        RESULTS.add(new ScalarResult(name, value, unit, AggregationPolicy.AVG));
+    }
+
+    /**
+     * @param elapsedNanos duration of the iteration
+     * @return one-off results, total for each counter, operations per second for each rate, and the average and
+     * maximum of each gauge, since the last call
+     */
+    static Collection<ScalarResult> drainResults(long elapsedNanos) {
+        List<ScalarResult> results = new ArrayList<>();
+        ScalarResult result;
+        while ((result = RESULTS.poll()) != null) {
+            results.add(result);
+        }
+        for (var entry : COUNTERS.entrySet()) {
+            results.add(new ScalarResult(entry.getKey(), entry.getValue().sumThenReset(), "#", AggregationPolicy.SUM));
+        }
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        for (var entry : RATES.entrySet()) {
+            results.add(new ScalarResult(entry.getKey(), entry.getValue().sumThenReset() / elapsedSeconds, "ops/s", AggregationPolicy.AVG));
+        }
+        for (var entry : GAUGES.entrySet()) {
+            entry.getValue().drain(entry.getKey(), results);
+        }
+        return results;
+    }
+
+    private static final class Gauge {
+        private long count;
+        private double sum;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        synchronized void sample(double value) {
+            this.count++;
+            this.sum += value;
+            this.max = Math.max(max, value);
+        }
+
+        synchronized void drain(String name, List<ScalarResult> results) {
+            if (count > 0) {
+                results.add(new ScalarResult(name + ".avg", sum / count, "#", AggregationPolicy.AVG));
+                results.add(new ScalarResult(name + ".max", max, "#", AggregationPolicy.MAX));
+            }
+            this.count = 0;
+            this.sum = 0;
+            this.max = Double.NEGATIVE_INFINITY;
+        }
+    }
+}
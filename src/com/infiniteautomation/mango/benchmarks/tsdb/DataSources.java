@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.HdrHistogram.Recorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Simulates many independent polling data sources (writers), each with its own poll period and set of points. The
+ * writers are scheduled on a shared pool of threads and save their values independently. The benchmark threads only
+ * wait for values to be saved by the writers, so the result is the rate at which the writers save values.
+ *
+ * <p>Scheduling lag (actual poll start time minus intended start time) percentiles, and the number of times and time the
+ * pool threads spent blocked on monitors (e.g. synchronized DAO locks) per poll, are reported as secondary results.
+ * Waiting on java.util.concurrent locks can not be separated from idle pool threads, so is not reported.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DataSources extends TsdbBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Simulation {
+
+        /**
+         * Number of simulated data sources
+         */
+        @Param("1000")
+        int writers;
+
+        /**
+         * Number of points per data source
+         */
+        @Param("5")
+        int pointsPerWriter;
+
+        /**
+         * Mean poll period (ms), each writer's period is randomly distributed between 0.5x and 1.5x this value
+         */
+        @Param("1000")
+        long pollPeriod;
+
+        /**
+         * Number of threads which the writers are scheduled on, zero uses one thread per CPU core
+         */
+        @Param("0")
+        int schedulerThreads;
+
+        final List<Writer> writerList = new ArrayList<>();
+        final Semaphore saved = new Semaphore(0);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> poolThreads = new CopyOnWriteArrayList<>();
+
+        ScheduledThreadPoolExecutor executor;
+        Recorder lagRecorder;
+        ThreadMXBean threadMXBean;
+        long blockedTime;
+        long blockedCount;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+            long start = System.nanoTime();
+            long startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            var points = mango.createMixedDataPoints(writers * pointsPerWriter);
+            Random random = new Random(0);
+            for (int i = 0; i < writers; i++) {
+                List<PointValueSource> sources = new ArrayList<>(pointsPerWriter);
+                for (DataPointVO point : points.subList(i * pointsPerWriter, (i + 1) * pointsPerWriter)) {
+                    sources.add(mango.createValueSource(point, startTimestamp, generator));
+                }
+                long period = TimeUnit.MILLISECONDS.toNanos(pollPeriod / 2 + (long) (random.nextDouble() * pollPeriod));
+                writerList.add(new Writer(this, mango, sources, Math.max(1, period)));
+            }
+
+            this.lagRecorder = LatencyHistograms.createConcurrentRecorder("schedulingLag");
+            this.threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean.isThreadContentionMonitoringSupported()) {
+                threadMXBean.setThreadContentionMonitoringEnabled(true);
+            }
+
+            long duration = System.nanoTime() - start;
+            System.out.printf("Created %d writers with %d points each in %.2f seconds.%n",
+                    writers, pointsPerWriter, TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0);
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration() {
+            int threads = schedulerThreads > 0 ? schedulerThreads : NUM_CPU_CORES;
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = r -> {
+                Thread thread = new Thread(r, "writer-pool-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                poolThreads.add(thread);
+                return thread;
+            };
+            this.executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+            executor.prestartAllCoreThreads();
+            this.blockedTime = contention(true);
+            this.blockedCount = contention(false);
+
+            Random random = new Random();
+            for (Writer writer : writerList) {
+                writer.schedule(executor, (long) (random.nextDouble() * writer.period));
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() throws InterruptedException {
+            // read before the pool threads terminate
+            double blockedMs = contention(true) - blockedTime;
+            double blocked = contention(false) - blockedCount;
+
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+
+            long polls = writerList.stream().mapToLong(w -> w.polls.getAndSet(0)).sum();
+            if (polls > 0) {
+                BenchmarkMetrics.result("polls", polls, "#");
+                BenchmarkMetrics.result("blockedCountPerPoll", blocked / polls, "#");
+                BenchmarkMetrics.result("blockedTimePerPoll", blockedMs / polls, "ms");
+            }
+            poolThreads.clear();
+            saved.drainPermits();
+        }
+
+        /**
+         * @param time true for the time (ms) blocked entering monitors, false for the number of times blocked
+         * @return total for all the pool threads
+         */
+        private long contention(boolean time) {
+            if (time && !threadMXBean.isThreadContentionMonitoringEnabled()) {
+                return 0;
+            }
+            long total = 0;
+            for (Thread thread : poolThreads) {
+                ThreadInfo info = threadMXBean.getThreadInfo(thread.getId());
+                if (info != null) {
+                    total += Math.max(0, time ? info.getBlockedTime() : info.getBlockedCount());
+                }
+            }
+            return total;
+        }
+    }
+
+    static class Writer implements Runnable {
+        final Simulation simulation;
+        final TsdbMockMango mango;
+        final List<PointValueSource> sources;
+        final long period;
+        final AtomicInteger polls = new AtomicInteger();
+        long intendedStart;
+
+        Writer(Simulation simulation, TsdbMockMango mango, List<PointValueSource> sources, long period) {
+            this.simulation = simulation;
+            this.mango = mango;
+            this.sources = sources;
+            this.period = period;
+        }
+
+        void schedule(ScheduledThreadPoolExecutor executor, long initialDelay) {
+            this.intendedStart = System.nanoTime() + initialDelay;
+            executor.scheduleAtFixedRate(this, initialDelay, period, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            // runs are never concurrent for a fixed rate task
+            long lag = System.nanoTime() - intendedStart;
+            simulation.lagRecorder.recordValue(Math.max(0, lag));
+            this.intendedStart += period;
+            try {
+                Stream<? extends BatchPointValue> values = sources.stream().flatMap(s -> s.stream(1));
+                mango.pvDao.savePointValues(values, sources.size());
+                polls.incrementAndGet();
+                simulation.saved.release(sources.size());
+            } catch (RuntimeException | Error e) {
+                simulation.failure.compareAndSet(null, e);
+                throw e;
+            }
+        }
+    }
+
+    @Benchmark
+    public void simulate(TsdbMockMango mango, Simulation simulation) throws InterruptedException {
+        int values = mango.points * mango.batchSize;
+        while (!simulation.saved.tryAcquire(values, 1, TimeUnit.SECONDS)) {
+            Throwable failure = simulation.failure.get();
+            if (failure != null) {
+                throw new IllegalStateException("Writer failed", failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.serotonin.m2m2.DataType;
+
+/**
+ * Weighted mix of data types, parsed from a string in the format "NUMERIC:70,BINARY:20,MULTISTATE:5,ALPHANUMERIC:5".
+ */
+public class DataTypeMix {
+
+    private final Map<DataType, Integer> weights;
+    private final int totalWeight;
+
+    private DataTypeMix(Map<DataType, Integer> weights) {
+        this.weights = Collections.unmodifiableMap(weights);
+        this.totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Total weight must be greater than zero");
+        }
+    }
+
+    public static DataTypeMix parse(String mix) {
+        Map<DataType, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            DataType dataType = DataType.valueOf(parts[0].trim());
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must not be negative: " + entry);
+            }
+            weights.merge(dataType, weight, Integer::sum);
+        }
+        return new DataTypeMix(weights);
+    }
+
+    public Map<DataType, Integer> getWeights() {
+        return weights;
+    }
+
+    /**
+     * Splits a count between the data types according to their weights, remainders are assigned to the data types
+     * with the largest weights first.
+     */
+    public Map<DataType, Integer> split(int count) {
+        Map<DataType, Integer> counts = new LinkedHashMap<>();
+        int assigned = 0;
+        for (var entry : weights.entrySet()) {
+            int typeCount = (int) ((long) count * entry.getValue() / totalWeight);
+            counts.put(entry.getKey(), typeCount);
+            assigned += typeCount;
+        }
+
+        List<DataType> byWeight = new ArrayList<>(weights.keySet());
+        byWeight.sort((a, b) -> Integer.compare(weights.get(b), weights.get(a)));
+        for (int i = 0; assigned < count; i++, assigned++) {
+            counts.merge(byWeight.get(i % byWeight.size()), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Interleaves the lists so that each data type is spread evenly through the result.
+     */
+    public static <T> List<T> interleave(List<List<T>> lists) {
+        List<double[]> keys = new ArrayList<>();
+        int total = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            int size = lists.get(i).size();
+            for (int j = 0; j < size; j++) {
+                keys.add(new double[] {(j + 0.5) / size, i, j});
+            }
+            total += size;
+        }
+        keys.sort((a, b) -> Double.compare(a[0], b[0]));
+
+        List<T> result = new ArrayList<>(total);
+        for (double[] key : keys) {
+            result.add(lists.get((int) key[1]).get((int) key[2]));
+        }
+        return result;
+    }
+}
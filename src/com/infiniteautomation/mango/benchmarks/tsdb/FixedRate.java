@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.Insert.InsertParams;
+
+/**
+ * Inserts values at a fixed target rate and records the latency of each save into per-thread HDR histograms.
+ * Latency is measured from the intended start time of each save rather than its actual start time, so a stalled
+ * save also counts against the saves which should have been started while it was stalled
+ * (i.e. corrected for coordinated omission).
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FixedRate extends TsdbBenchmark {
+
+    @State(Scope.Thread)
+    public static class Schedule {
+
+        /**
+         * Target number of point values inserted per second, across all threads.
+         */
+        @Param("100000")
+        long targetRate;
+
+        long intervalNanos;
+        long intendedStart;
+        SingleWriterRecorder recorder;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) {
+            if (targetRate <= 0) {
+                throw new IllegalStateException("Target rate must be greater than zero");
+            }
+            // interval between saves for a single thread
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) * mango.batchSize * mango.threads / targetRate;
+            this.recorder = LatencyHistograms.createRecorder("savePointValues");
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration() {
+            // stagger the threads so they do not all save at once
+            this.intendedStart = System.nanoTime() + ThreadLocalRandom.current().nextLong(Math.max(1, intervalNanos));
+        }
+
+        /**
+         * Parks the thread until the intended start time of the next save. Does not wait if we are behind schedule.
+         */
+        void awaitIntendedStart() {
+            long delay;
+            while ((delay = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+        }
+
+        /**
+         * Records the latency of the save relative to its intended start time and schedules the next save.
+         */
+        void recordCompletion() {
+            recorder.recordValue(System.nanoTime() - intendedStart);
+            this.intendedStart += intervalNanos;
+        }
+    }
+
+    @Benchmark
+    public void insert(TsdbMockMango mango, InsertParams insertParams, Schedule schedule) {
+        for (int i = 0; i < mango.points; i++) {
+            var source = insertParams.next();
+            schedule.awaitIntendedStart();
+            mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+            schedule.recordCompletion();
+        }
+    }
+}
@@ -8,8 +8,8 @@ import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -21,14 +21,18 @@ import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
 
-import com.infiniteautomation.mango.pointvalue.generator.BatchPointValueSupplier;
 import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.infiniteautomation.mango.pointvalue.generator.PointValueGenerator;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.vo.DataPointVO;
 
 @Fork(value = 1, warmups = 0)
 @BenchmarkMode(Mode.Throughput)
@@ -40,49 +44,144 @@ public class Insert extends TsdbBenchmark {
     @State(Scope.Thread)
     public static class InsertParams {
 
+        /**
+         * live - values are generated as they are inserted,
+         * pregenerated - values are generated during setup and replayed from primitive arrays, allocating a value
+         * object per value,
+         * preallocated - the value objects are created during setup and replayed without allocating, until the values
+         * wrap around (see {@link PreGeneratedPointValueSource})
+         */
+        @Param({"live"})
+        String valueSource;
+
+        /**
+         * Number of values generated per point during setup when using pre-generated values, these are replayed
+         * in a loop with timestamps shifted forward.
+         */
+        @Param("10000")
+        int preGeneratedValues;
+
         long startTimestamp;
         long invocationCount;
-        List<BatchPointValueSupplier> suppliers;
-        Iterator<BatchPointValueSupplier> it;
+        /**
+         * points and sources for this thread, only populated when the points are partitioned
+         */
+        List<DataPointVO> points;
+        List<PointValueSource> sources;
+        int index = -1;
+
+        TsdbMockMango mango;
+        PointPool pointPool;
+        PointValueGenerator generator;
+        /**
+         * sources for this thread, indexed by position in the point pool, created when first selected
+         */
+        PointValueSource[] poolSources;
+        final SplittableRandom random = new SplittableRandom();
 
         @Setup(Level.Trial)
-        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+        public void setup(TsdbMockMango mango, PointPool pointPool) throws ExecutionException, InterruptedException {
             long start = System.nanoTime();
+            this.mango = mango;
+            this.pointPool = pointPool;
             this.startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
-            var points = mango.createDataPoints(mango.totalPoints / mango.threads, Collections.emptyMap());
-            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
-            this.suppliers = points.stream().map(generator::createSupplier).collect(Collectors.toList());
+            this.generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            if (!pointPool.isPartitioned()) {
+                this.points = Collections.emptyList();
+                this.sources = Collections.emptyList();
+                this.poolSources = new PointValueSource[pointPool.points.size()];
+                return;
+            }
+
+            this.points = mango.createMixedDataPoints(mango.totalPoints / mango.threads);
+            this.sources = points.stream().map(p -> createSource(mango, generator, p)).collect(Collectors.toList());
             long duration = System.nanoTime() - start;
             System.out.printf("Thread '%s' created %d points in %.2f seconds.%n",
                     Thread.currentThread().getName(), mango.totalPoints / mango.threads, TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0);
         }
 
+        private PointValueSource createSource(TsdbMockMango mango, PointValueGenerator generator, DataPointVO point) {
+            switch (valueSource) {
+                case "live":
+                    return mango.createValueSource(point, startTimestamp, generator);
+                case "pregenerated":
+                case "preallocated":
+                    if (point.getPointLocator().getDataType() != DataType.NUMERIC) {
+                        // only numeric values are pre-generated
+                        return mango.createValueSource(point, startTimestamp, generator);
+                    }
+                    return new PreGeneratedPointValueSource(generator, point, preGeneratedValues, mango.period,
+                            valueSource.equals("preallocated"));
+                default:
+                    throw new IllegalStateException("Unknown value source: " + valueSource);
+            }
+        }
+
         @TearDown(Level.Invocation)
         public void tearDownInvocation() {
             this.invocationCount++;
         }
 
         /**
-         * @return the next supplier from the list, looping back to start if end of list reached
+         * Records the number of values written for the data type of the source.
          */
-        public BatchPointValueSupplier next() {
-            if (it == null || !it.hasNext()) {
-                it = suppliers.iterator();
+        public void recordWritten(PointValueSource source, int values) {
+            BenchmarkMetrics.addRate(source.getPoint().getPointLocator().getDataType() + ".values", values);
+        }
+
+        /**
+         * @return the next source from the list, looping back to start if end of list reached. When the points are
+         * shared, a point is selected from the pool and the timestamps for the next batch of values are claimed.
+         */
+        public PointValueSource next() {
+            if (pointPool.isPartitioned()) {
+                if (++index >= sources.size()) {
+                    index = 0;
+                }
+                return sources.get(index);
+            }
+
+            int selected = pointPool.select(random);
+            PointValueSource source = poolSources[selected];
+            if (source == null) {
+                source = createSource(mango, generator, pointPool.points.get(selected));
+                poolSources[selected] = source;
             }
-            return it.next();
+            long timestamp = pointPool.claim(selected, mango.batchSize, mango.period);
+            source.setTimestamp(Instant.ofEpochMilli(timestamp));
+            return source;
         }
     }
 
     @Benchmark
     public void insert(TsdbMockMango mango, InsertParams insertParams) {
         for (int i = 0; i < mango.points; i++) {
-            var supplier = insertParams.next();
-            mango.pvDao.savePointValues(supplier.stream().limit(mango.batchSize), mango.batchSize);
+            var source = insertParams.next();
+            mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+            insertParams.recordWritten(source, mango.batchSize);
+        }
+    }
+
+    /**
+     * Baseline which only consumes the generated values, subtract from the insert results to remove the cost of
+     * generating values. Use with "-prof gc" to see the allocation rate of the value source. The live and pregenerated
+     * value sources allocate a value object per value and a stream per call, preallocated only allocates a stream per
+     * call while the values fit in preGeneratedValues.
+     */
+    @Benchmark
+    public void generateOnly(TsdbMockMango mango, InsertParams insertParams, Blackhole blackhole) {
+        for (int i = 0; i < mango.points; i++) {
+            var source = insertParams.next();
+            source.stream(mango.batchSize).forEach(blackhole::consume);
         }
     }
 
     @Benchmark
     public void withBackdates(TsdbMockMango mango, InsertParams insertParams) {
+        if (!insertParams.pointPool.isPartitioned()) {
+            throw new IllegalStateException("Backdates require pointAssignment=partitioned");
+        }
+
         // every x invocations insert some backdated values, this leaves holes and back-fills them without overwriting
         int backdateFrequency = 10;
         long batchPeriod = mango.period * mango.batchSize;
@@ -90,17 +189,18 @@ public class Insert extends TsdbBenchmark {
         long startOffset = insertParams.startTimestamp % backdatePeriod;
 
         for (int i = 0; i < mango.points; i++) {
-            var supplier = insertParams.next();
-            Instant ts = supplier.getTimestamp();
+            var source = insertParams.next();
+            Instant ts = source.getTimestamp();
             if (ts.toEpochMilli() % backdatePeriod == startOffset) {
                 // rewind timestamp
-                supplier.setTimestamp(ts.minus(backdatePeriod, ChronoUnit.MILLIS));
+                source.setTimestamp(ts.minus(backdatePeriod, ChronoUnit.MILLIS));
             }
 
-            mango.pvDao.savePointValues(supplier.stream().limit(mango.batchSize), mango.batchSize);
+            mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+            insertParams.recordWritten(source, mango.batchSize);
 
             // restore timestamp position
-            supplier.setTimestamp(ts.plus(batchPeriod, ChronoUnit.MILLIS));
+            source.setTimestamp(ts.plus(batchPeriod, ChronoUnit.MILLIS));
         }
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Registry of latency recorders. Each benchmark thread records into its own {@link SingleWriterRecorder}, or a
+ * {@link Recorder} is shared by a pool of threads. The recorders are merged per name and converted to percentile
+ * results by the {@link TsdbProfiler} after each iteration.
+ */
+public final class LatencyHistograms {
+
+    public static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final Map<String, Queue<Supplier<Histogram>>> RECORDERS = new ConcurrentHashMap<>();
+
+    private LatencyHistograms() {
+    }
+
+    /**
+     * Create a new recorder, must only be recorded into by a single thread.
+     *
+     * @param name name of the operation, used as a prefix for the result labels
+     * @return recorder which accepts latencies in nanoseconds
+     */
+    public static SingleWriterRecorder createRecorder(String name) {
+        var recorder = new SingleWriterRecorder(SIGNIFICANT_DIGITS);
+        RECORDERS.computeIfAbsent(name, k -> new ConcurrentLinkedQueue<>()).add(recorder::getIntervalHistogram);
+        return recorder;
+    }
+
+    /**
+     * Create a new recorder which may be recorded into by multiple threads concurrently.
+     *
+     * @param name name of the operation, used as a prefix for the result labels
+     * @return recorder which accepts latencies in nanoseconds
+     */
+    public static Recorder createConcurrentRecorder(String name) {
+        var recorder = new Recorder(SIGNIFICANT_DIGITS);
+        RECORDERS.computeIfAbsent(name, k -> new ConcurrentLinkedQueue<>()).add(recorder::getIntervalHistogram);
+        return recorder;
+    }
+
+    /**
+     * Merges the values recorded since the last call, for every thread.
+     *
+     * @return p50/p99/p99.9/max results (in microseconds) for each name which had values recorded
+     */
+    static Collection<ScalarResult> drainResults() {
+        List<ScalarResult> results = new ArrayList<>();
+        for (var entry : RECORDERS.entrySet()) {
+            Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+            for (Supplier<Histogram> recorder : entry.getValue()) {
+                merged.add(recorder.get());
+            }
+            if (merged.getTotalCount() == 0) {
+                continue;
+            }
+
+            String name = entry.getKey();
+            results.add(percentileResult(name + ".p50", merged.getValueAtPercentile(50), AggregationPolicy.AVG));
+            results.add(percentileResult(name + ".p99", merged.getValueAtPercentile(99), AggregationPolicy.AVG));
+            results.add(percentileResult(name + ".p99.9", merged.getValueAtPercentile(99.9), AggregationPolicy.AVG));
+            results.add(percentileResult(name + ".max", merged.getMaxValue(), AggregationPolicy.MAX));
+            results.add(new ScalarResult(name + ".count", merged.getTotalCount(), "#", AggregationPolicy.SUM));
+        }
+        return results;
+    }
+
+    private static ScalarResult percentileResult(String label, long nanos, AggregationPolicy policy) {
+        return new ScalarResult(label, nanos / (double) TimeUnit.MICROSECONDS.toNanos(1), "us", policy);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.Scaling.PointSet;
+import com.infiniteautomation.mango.benchmarks.tsdb.Scaling.Slice;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Reads the latest values of points, as Mango does when loading the initial point value cache of each point on
+ * startup. The points and their values are created using the {@link Scaling} states, i.e. all of totalPoints are
+ * read in turn. The number of latest values read per point is the batchSize.
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Latest extends TsdbBenchmark {
+
+    /**
+     * Cycles through the points of the slice one at a time.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index = -1;
+
+        DataPointVO next(Slice slice) {
+            if (++index >= slice.slicePoints.size()) {
+                index = 0;
+            }
+            return slice.slicePoints.get(index);
+        }
+    }
+
+    /**
+     * Restarts the Mango lifecycle before each iteration, so that the {@link #coldStart} and {@link #coldStartBulk}
+     * reads are the first reads after startup. The restart time is reported as a secondary result.
+     */
+    @State(Scope.Benchmark)
+    public static class ColdStart {
+
+        /**
+         * Drops the OS page cache after restarting, requires root
+         */
+        @Param("false")
+        boolean dropCaches;
+
+        @Setup(Level.Iteration)
+        public void setupIteration(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+            long start = System.nanoTime();
+            mango.restart();
+            BenchmarkMetrics.result("coldStart.restartTime", (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1), "s");
+
+            if (dropCaches) {
+                dropCaches();
+            }
+        }
+
+        /**
+         * Records the time taken per value read, the score of a single shot benchmark is the time for the whole invocation.
+         */
+        static void recordRead(TsdbMockMango mango, Slice slice, long durationNanos) {
+            long values = (long) slice.slicePoints.size() * mango.batchSize;
+            BenchmarkMetrics.result("coldStart.timePerValue", durationNanos / (double) TimeUnit.MICROSECONDS.toNanos(1) / values, "us");
+        }
+
+        private static void dropCaches() throws InterruptedException {
+            try {
+                new ProcessBuilder("sync").inheritIO().start().waitFor();
+                Files.write(Path.of("/proc/sys/vm/drop_caches"), "3".getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                System.err.printf("WARN: Failed to drop OS page cache: %s%n", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the latest value for batchSize * points points.
+     */
+    @Benchmark
+    public void latestValue(TsdbMockMango mango, Slice slice, Cursor cursor, Blackhole blackhole) {
+        int count = mango.points * mango.batchSize;
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(mango.pvDao.getLatestPointValue(cursor.next(slice)));
+        }
+    }
+
+    @Benchmark
+    public void latestValues(TsdbMockMango mango, Slice slice, Blackhole blackhole) {
+        for (DataPointVO point : slice.points) {
+            blackhole.consume(mango.pvDao.getLatestPointValues(point, mango.batchSize));
+        }
+    }
+
+    @Benchmark
+    public void latestValuesMultiPoint(TsdbMockMango mango, PointSet pointSet, Slice slice, Blackhole blackhole) {
+        mango.pvDao.getPointValuesPerPoint(slice.points, pointSet.startTimestamp, pointSet.endTimestamp, mango.batchSize,
+                TimeOrder.DESCENDING, blackhole::consume);
+    }
+
+    /**
+     * Reads the latest batchSize values of every point of the thread's slice one point at a time, once per iteration,
+     * straight after restarting Mango. The points are split between the threads, so together the threads read all of
+     * totalPoints as Mango does on startup. The score is the total time taken by the invocation, the time per value read
+     * is reported as a secondary result.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(iterations = 5)
+    public void coldStart(TsdbMockMango mango, Slice slice, ColdStart coldStart, Blackhole blackhole) {
+        long start = System.nanoTime();
+        for (DataPointVO point : slice.slicePoints) {
+            blackhole.consume(mango.pvDao.getLatestPointValues(point, mango.batchSize));
+        }
+        ColdStart.recordRead(mango, slice, System.nanoTime() - start);
+    }
+
+    /**
+     * As for {@link #coldStart}, but reads the latest values of the points in chunks of "points" number of points
+     * using a single multi-point query per chunk.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(iterations = 5)
+    public void coldStartBulk(TsdbMockMango mango, PointSet pointSet, Slice slice, ColdStart coldStart, Blackhole blackhole) {
+        long start = System.nanoTime();
+        int size = slice.slicePoints.size();
+        for (int i = 0; i < size; i += mango.points) {
+            var chunk = slice.slicePoints.subList(i, Math.min(i + mango.points, size));
+            mango.pvDao.getPointValuesPerPoint(chunk, pointSet.startTimestamp, pointSet.endTimestamp, mango.batchSize,
+                    TimeOrder.DESCENDING, blackhole::consume);
+        }
+        ColdStart.recordRead(mango, slice, System.nanoTime() - start);
+    }
+}
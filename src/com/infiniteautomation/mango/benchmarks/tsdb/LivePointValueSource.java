@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import com.infiniteautomation.mango.pointvalue.generator.BatchPointValueSupplier;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Generates values as they are consumed.
+ */
+public class LivePointValueSource implements PointValueSource {
+
+    private final DataPointVO point;
+    private final BatchPointValueSupplier supplier;
+
+    public LivePointValueSource(DataPointVO point, BatchPointValueSupplier supplier) {
+        this.point = point;
+        this.supplier = supplier;
+    }
+
+    @Override
+    public DataPointVO getPoint() {
+        return point;
+    }
+
+    @Override
+    public Stream<? extends BatchPointValue> stream(int limit) {
+        return supplier.stream().limit(limit);
+    }
+
+    @Override
+    public Instant getTimestamp() {
+        return supplier.getTimestamp();
+    }
+
+    @Override
+    public void setTimestamp(Instant timestamp) {
+        supplier.setTimestamp(timestamp);
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.infiniteautomation.mango.benchmarks.MockMango.SetSecurityContext;
+import com.infiniteautomation.mango.benchmarks.tsdb.Scaling.PointSet;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.db.dao.BatchPointValueImpl;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Streams the full history of the points (created using the {@link Scaling} states) through a bounded pipeline. Reader
+ * threads read the history of one point at a time and enqueue batches of batchSize values, writer threads dequeue the
+ * batches and either insert them into a second set of points (migrationTarget=dao) or write them to a trace file
+ * (migrationTarget=file, see {@link TraceFile}). When all points have been copied they are copied again, shifted
+ * forward in time. The benchmark threads only wait for values to be written, so the result is the sustained rate of the
+ * pipeline.
+ *
+ * <p>Only a single PointValueDao implementation can be loaded, so values are copied between points of the same
+ * implementation. The heap high-water mark and the time the readers were blocked by a full queue (back-pressure) are
+ * reported as secondary results.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Migrate extends TsdbBenchmark {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+
+        /**
+         * dao - insert into a second set of points, file - write to a trace file
+         */
+        @Param("dao")
+        String migrationTarget;
+
+        /**
+         * Number of reader threads
+         */
+        @Param("4")
+        int migrationReaders;
+
+        /**
+         * Number of writer threads, always 1 for the file target
+         */
+        @Param("4")
+        int migrationWriters;
+
+        /**
+         * Capacity of the queue between the readers and writers, in batches
+         */
+        @Param("100")
+        int migrationQueueSize;
+
+        /**
+         * Path of the trace file written by the file target, a temporary file is used if empty
+         */
+        @Param("")
+        String exportFile;
+
+        List<DataPointVO> sources;
+        /**
+         * destination for each source point, only for the dao target
+         */
+        List<DataPointVO> destinations;
+        long span;
+
+        final AtomicLong nextPoint = new AtomicLong();
+        final Semaphore written = new Semaphore(0);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        BlockingQueue<Batch> queue;
+        ExecutorService executor;
+        volatile boolean running;
+        Path tracePath;
+        TraceWriter traceWriter;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, PointSet pointSet, SetSecurityContext setSecurityContext) throws ExecutionException, InterruptedException, IOException {
+            this.sources = pointSet.allPoints;
+            this.span = pointSet.endTimestamp - pointSet.startTimestamp;
+
+            switch (migrationTarget) {
+                case "dao":
+                    this.destinations = createDestinations(mango);
+                    break;
+                case "file":
+                    // alphanumeric values are not supported by the trace file format
+                    this.sources = sources.stream()
+                            .filter(p -> p.getPointLocator().getDataType() != DataType.ALPHANUMERIC)
+                            .collect(Collectors.toList());
+                    if (sources.isEmpty()) {
+                        throw new IllegalStateException("The file target does not support alphanumeric points");
+                    }
+                    BenchmarkMetrics.result("export.skippedPoints", pointSet.allPoints.size() - sources.size(), "#");
+                    this.migrationWriters = 1;
+                    this.tracePath = exportFile.isEmpty() ? Files.createTempFile("export", ".trace") : Path.of(exportFile);
+                    this.traceWriter = new TraceWriter(tracePath);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown migration target: " + migrationTarget);
+            }
+        }
+
+        /**
+         * @return a destination point for each source point, with the same data type
+         */
+        private List<DataPointVO> createDestinations(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+            Map<DataType, Integer> counts = new EnumMap<>(DataType.class);
+            for (DataPointVO source : sources) {
+                counts.merge(source.getPointLocator().getDataType(), 1, Integer::sum);
+            }
+            Map<DataType, List<DataPointVO>> created = new EnumMap<>(DataType.class);
+            for (var entry : counts.entrySet()) {
+                created.put(entry.getKey(), new ArrayList<>(mango.createDataPoints(entry.getValue(), entry.getKey())));
+            }
+            List<DataPointVO> destinations = new ArrayList<>(sources.size());
+            for (DataPointVO source : sources) {
+                destinations.add(created.get(source.getPointLocator().getDataType()).remove(0));
+            }
+            return destinations;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (traceWriter != null) {
+                traceWriter.close();
+                BenchmarkMetrics.result("export.bytesPerValue", traceWriter.size() / (double) Math.max(1, traceWriter.getRecordCount()), "B");
+                if (exportFile.isEmpty()) {
+                    Files.deleteIfExists(tracePath);
+                }
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration(TsdbMockMango mango, PointSet pointSet, SetSecurityContext setSecurityContext) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+
+            this.queue = new ArrayBlockingQueue<>(migrationQueueSize);
+            this.running = true;
+            this.executor = new DelegatingSecurityContextExecutorService(Executors.newFixedThreadPool(migrationReaders + migrationWriters),
+                    SecurityContextHolder.getContext());
+            for (int i = 0; i < migrationReaders; i++) {
+                executor.execute(() -> run(() -> read(mango, pointSet)));
+            }
+            for (int i = 0; i < migrationWriters; i++) {
+                executor.execute(() -> run(() -> write(mango)));
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() throws InterruptedException {
+            // threads are not interrupted, as interrupting a DAO call may close its database connection or files
+            this.running = false;
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+            BenchmarkMetrics.result("memory.peakHeap", peakHeap, "B");
+            written.drainPermits();
+        }
+
+        private void run(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the history of the next point, until stopped
+         */
+        private void read(TsdbMockMango mango, PointSet pointSet) {
+            while (running) {
+                long next = nextPoint.getAndIncrement();
+                int index = (int) (next % sources.size());
+                long shift = next / sources.size() * span;
+                DataPointVO source = sources.get(index);
+                DataPointVO destination = destinations != null ? destinations.get(index) : source;
+
+                Batch[] batch = {new Batch(index, destination, mango.batchSize)};
+                try {
+                    mango.pvDao.getPointValuesPerPoint(List.of(source), pointSet.startTimestamp, pointSet.endTimestamp, null, TimeOrder.ASCENDING, v -> {
+                        batch[0].values.add(new BatchPointValueImpl(destination, new PointValueTime(v.getValue(), v.getTime() + shift)));
+                        if (batch[0].values.size() == mango.batchSize) {
+                            enqueue(batch[0]);
+                            batch[0] = new Batch(index, destination, mango.batchSize);
+                        }
+                    });
+                    if (!batch[0].values.isEmpty()) {
+                        enqueue(batch[0]);
+                    }
+                } catch (StoppedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void enqueue(Batch batch) {
+            if (queue.offer(batch)) {
+                return;
+            }
+            // queue is full
+            long start = System.nanoTime();
+            try {
+                while (!queue.offer(batch, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (!running) {
+                        throw new StoppedException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StoppedException();
+            }
+            BenchmarkMetrics.increment("backPressure.stalls");
+            BenchmarkMetrics.add("backPressure.stallTimeMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        /**
+         * Writes batches from the queue, until stopped
+         */
+        private void write(TsdbMockMango mango) {
+            try {
+                while (running) {
+                    BenchmarkMetrics.sample("queueDepth", queue.size());
+                    Batch batch = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        continue;
+                    }
+                    if (traceWriter != null) {
+                        export(batch);
+                    } else {
+                        mango.pvDao.savePointValues(batch.values.stream(), mango.batchSize);
+                    }
+                    written.release(batch.values.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void export(Batch batch) {
+            DataType dataType = batch.point.getPointLocator().getDataType();
+            try {
+                for (BatchPointValue value : batch.values) {
+                    PointValueTime pvt = value.getValue();
+                    traceWriter.write(batch.index, pvt.getTime(), dataType, pvt.getDoubleValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static class Batch {
+        final int index;
+        final DataPointVO point;
+        final List<BatchPointValue> values;
+
+        Batch(int index, DataPointVO point, int size) {
+            this.index = index;
+            this.point = point;
+            this.values = new ArrayList<>(size);
+        }
+    }
+
+    /**
+     * Aborts a read when the pipeline is stopped
+     */
+    static class StoppedException extends RuntimeException {
+        StoppedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    @Benchmark
+    public void migrate(TsdbMockMango mango, Pipeline pipeline, SetSecurityContext setSecurityContext) throws InterruptedException {
+        int values = mango.points * mango.batchSize;
+        while (!pipeline.written.tryAcquire(values, 1, TimeUnit.SECONDS)) {
+            Throwable failure = pipeline.failure.get();
+            if (failure != null) {
+                throw new IllegalStateException("Pipeline failed", failure);
+            }
+        }
+    }
+}
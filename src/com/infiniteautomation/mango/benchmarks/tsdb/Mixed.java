@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.pointvalue.generator.BatchPointValueSupplier;
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Inserts and reads concurrently, the readers query the time range which the writers in the same group are
+ * currently appending to. The number of writer and reader threads in each group is set via the writerThreads and
+ * readerThreads parameters.
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Mixed extends TsdbBenchmark {
+
+    /**
+     * Shared between the writers and readers of a thread group.
+     */
+    @State(Scope.Group)
+    public static class GroupState {
+        /**
+         * points which have been created by the writers in this group
+         */
+        final List<DataPointVO> writtenPoints = new CopyOnWriteArrayList<>();
+        /**
+         * latest timestamp written by any writer in this group
+         */
+        final LongAccumulator head = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        /**
+         * number of writers in this group which have written values for all of their points
+         */
+        final AtomicInteger readyWriters = new AtomicInteger();
+    }
+
+    @State(Scope.Thread)
+    public static class WriterState {
+
+        List<BatchPointValueSupplier> suppliers;
+        Iterator<BatchPointValueSupplier> it;
+        GroupState groupState;
+        boolean ready;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, GroupState groupState) throws ExecutionException, InterruptedException {
+            long start = System.nanoTime();
+            long startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            int pointsPerWriter = mango.pointsPerWriter();
+            var points = mango.createDataPoints(pointsPerWriter, Collections.emptyMap());
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            this.suppliers = points.stream().map(generator::createSupplier).collect(Collectors.toList());
+            groupState.writtenPoints.addAll(points);
+            groupState.head.accumulate(startTimestamp);
+            this.groupState = groupState;
+            long duration = System.nanoTime() - start;
+            System.out.printf("Writer thread '%s' created %d points in %.2f seconds.%n",
+                    Thread.currentThread().getName(), pointsPerWriter, TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0);
+        }
+
+        /**
+         * @return the next supplier from the list, looping back to start if end of list reached
+         */
+        public BatchPointValueSupplier next() {
+            if (it == null || !it.hasNext()) {
+                if (it != null && !ready) {
+                    this.ready = true;
+                    groupState.readyWriters.incrementAndGet();
+                }
+                it = suppliers.iterator();
+            }
+            return it.next();
+        }
+    }
+
+    /**
+     * Before each read, waits until every writer in the group has written values for all of its points, so that the
+     * readers do not count reads of points without values.
+     */
+    @State(Scope.Thread)
+    public static class ReaderState {
+
+        /**
+         * Time (ms) to wait for the writers to write values for all of their points before failing
+         */
+        private static final long READY_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+        int index = 0;
+        long readStart;
+        long readEnd;
+        /**
+         *  points read within a single invocation
+         */
+        List<DataPointVO> points = Collections.emptyList();
+
+        @Setup(Level.Invocation)
+        public void nextRead(TsdbMockMango mango, GroupState groupState) {
+            awaitWriters(mango, groupState);
+            List<DataPointVO> allPoints = groupState.writtenPoints;
+            int size = allPoints.size();
+
+            int endIndex = index + mango.points;
+            if (endIndex > size) {
+                this.index = 0;
+                endIndex = Math.min(mango.points, size);
+            }
+            this.points = allPoints.subList(index, endIndex);
+            this.index = endIndex;
+
+            // read the range immediately behind the writers
+            this.readEnd = groupState.head.get();
+            this.readStart = readEnd - mango.batchSize * mango.period;
+        }
+
+        private void awaitWriters(TsdbMockMango mango, GroupState groupState) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READY_TIMEOUT);
+            while (groupState.readyWriters.get() < mango.writerThreads) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Writers did not write values for all of their points within " + READY_TIMEOUT + " ms");
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void write(TsdbMockMango mango, GroupState groupState, WriterState writerState) {
+        for (int i = 0; i < mango.points; i++) {
+            var supplier = writerState.next();
+            mango.pvDao.savePointValues(supplier.stream().limit(mango.batchSize), mango.batchSize);
+            groupState.head.accumulate(supplier.getTimestamp().toEpochMilli());
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void read(TsdbMockMango mango, ReaderState readerState, Blackhole blackhole) {
+        mango.pvDao.getPointValuesCombined(readerState.points, readerState.readStart, readerState.readEnd, null, TimeOrder.ASCENDING, blackhole::consume);
+    }
+}
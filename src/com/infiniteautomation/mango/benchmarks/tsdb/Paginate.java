@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.Read.ReadState;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Limited queries, as used by the REST API. The values are inserted using the {@link Read} states.
+ *
+ * <p>The firstPage benchmarks query the entire history of each point with a limit of batchSize, compare them with the
+ * equivalent Read benchmarks (which query a time range containing batchSize values, with no limit) to see if the
+ * implementation stops reading early or scans the whole range. The pages benchmarks read batchSize values per point
+ * in pages of limit values, each page continues from the last timestamp of the previous page.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Paginate extends TsdbBenchmark {
+
+    @State(Scope.Thread)
+    public static class PageState {
+
+        /**
+         * Number of values per page
+         */
+        @Param("100")
+        int limit;
+
+        int count;
+        long lastTimestamp;
+        Blackhole blackhole;
+
+        void accept(IdPointValueTime value) {
+            this.count++;
+            this.lastTimestamp = value.getTime();
+            blackhole.consume(value);
+        }
+
+        /**
+         * Reads values for the point until the expected number of values have been read, or there are no more values.
+         */
+        void readPages(TsdbMockMango mango, ReadState readState, DataPointVO point, TimeOrder order, int expected) {
+            List<DataPointVO> points = List.of(point);
+            long from = readState.readStart;
+            long to = readState.endTimestamp;
+            if (order == TimeOrder.DESCENDING) {
+                from = readState.startTimestamp;
+                to = readState.readEnd;
+            }
+
+            int remaining = expected;
+            while (remaining > 0) {
+                this.count = 0;
+                mango.pvDao.getPointValuesPerPoint(points, from, to, Math.min(limit, remaining), order, this::accept);
+                if (count == 0) {
+                    break;
+                }
+                remaining -= count;
+                // continue from the last timestamp, the range is open-ended towards the end/start of the data
+                if (order == TimeOrder.ASCENDING) {
+                    from = lastTimestamp + 1;
+                } else {
+                    to = lastTimestamp;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void firstPageAscending(TsdbMockMango mango, ReadState readState, Blackhole blackhole) {
+        mango.pvDao.getPointValuesPerPoint(readState.points, readState.startTimestamp, readState.endTimestamp, mango.batchSize, TimeOrder.ASCENDING, blackhole::consume);
+    }
+
+    @Benchmark
+    public void firstPageDescending(TsdbMockMango mango, ReadState readState, Blackhole blackhole) {
+        mango.pvDao.getPointValuesPerPoint(readState.points, readState.startTimestamp, readState.endTimestamp, mango.batchSize, TimeOrder.DESCENDING, blackhole::consume);
+    }
+
+    @Benchmark
+    public void pagesAscending(TsdbMockMango mango, ReadState readState, PageState pageState, Blackhole blackhole) {
+        pageState.blackhole = blackhole;
+        for (DataPointVO point : readState.points) {
+            pageState.readPages(mango, readState, point, TimeOrder.ASCENDING, mango.batchSize);
+        }
+    }
+
+    @Benchmark
+    public void pagesDescending(TsdbMockMango mango, ReadState readState, PageState pageState, Blackhole blackhole) {
+        pageState.blackhole = blackhole;
+        for (DataPointVO point : readState.points) {
+            pageState.readPages(mango, readState, point, TimeOrder.DESCENDING, mango.batchSize);
+        }
+    }
+}
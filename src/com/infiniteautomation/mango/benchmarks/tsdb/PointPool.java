@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.TsdbBenchmark.TsdbMockMango;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Determines how points are assigned to the benchmark threads.
+ * <ul>
+ *     <li>partitioned - each thread creates its own points, no two threads access the same point</li>
+ *     <li>shared - all threads select points uniformly from a global pool of totalPoints</li>
+ *     <li>zipfian - all threads select points from a global pool of totalPoints, with a Zipfian distribution</li>
+ * </ul>
+ * When points are shared, writers claim the timestamps for each batch of values atomically, so that each value
+ * written to a point has a unique timestamp.
+ */
+@State(Scope.Benchmark)
+public class PointPool {
+
+    @Param("partitioned")
+    String pointAssignment;
+
+    /**
+     * Skew of the zipfian point assignment, 0 is uniform
+     */
+    @Param("0.99")
+    double zipfSkew;
+
+    /**
+     * all the points, null when partitioned
+     */
+    List<DataPointVO> points;
+    /**
+     * next unclaimed timestamp of each point
+     */
+    AtomicLongArray nextTimestamps;
+    ZipfianDistribution zipfian;
+    final AtomicInteger threadIndex = new AtomicInteger();
+    /**
+     * permutation of the point indices for each thread, used by {@link #selectDistinct(SplittableRandom, int)}
+     */
+    final ThreadLocal<int[]> permutation = ThreadLocal.withInitial(() -> {
+        int[] indices = new int[points.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    });
+
+    @Setup(Level.Trial)
+    public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+        switch (pointAssignment) {
+            case "partitioned":
+                return;
+            case "shared":
+            case "zipfian":
+                break;
+            default:
+                throw new IllegalStateException("Unknown point assignment: " + pointAssignment);
+        }
+        if (mango.points > mango.totalPoints) {
+            throw new IllegalStateException("Points per operation must not be greater than totalPoints when points are shared");
+        }
+
+        List<DataPointVO> created = new ArrayList<>(mango.createMixedDataPoints(mango.totalPoints));
+        // popularity should not be correlated with the data type or ID of the points
+        Collections.shuffle(created, new Random(0));
+        this.points = created;
+
+        long startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+        this.nextTimestamps = new AtomicLongArray(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            nextTimestamps.set(i, startTimestamp);
+        }
+
+        if (pointAssignment.equals("zipfian")) {
+            this.zipfian = new ZipfianDistribution(points.size(), zipfSkew);
+            BenchmarkMetrics.result("zipfian.top1PercentShare", zipfian.share(Math.max(1, points.size() / 100)), "ratio");
+        }
+    }
+
+    boolean isPartitioned() {
+        return points == null;
+    }
+
+    /**
+     * @return index of a point in the pool
+     */
+    int select(SplittableRandom random) {
+        return zipfian != null ? zipfian.sample(random) : random.nextInt(points.size());
+    }
+
+    /**
+     * Draws points from the distribution until count distinct points are selected. Duplicates become more likely as
+     * count approaches the pool size (especially with a zipfian distribution), so the number of draws is limited and
+     * the remaining points are selected uniformly using a partial shuffle.
+     *
+     * @return count distinct points from the pool
+     */
+    List<DataPointVO> selectDistinct(SplittableRandom random, int count) {
+        Set<DataPointVO> selected = new LinkedHashSet<>();
+        for (int draws = 0; selected.size() < count && draws < count * 4; draws++) {
+            selected.add(points.get(select(random)));
+        }
+        int[] indices = permutation.get();
+        for (int i = 0; selected.size() < count; i++) {
+            int j = i + random.nextInt(indices.length - i);
+            int index = indices[j];
+            indices[j] = indices[i];
+            indices[i] = index;
+            selected.add(points.get(index));
+        }
+        return new ArrayList<>(selected);
+    }
+
+    /**
+     * Claims the timestamps for a batch of values.
+     *
+     * @return the timestamp of the first value in the batch
+     */
+    long claim(int index, int values, long period) {
+        return nextTimestamps.getAndAdd(index, values * period);
+    }
+}
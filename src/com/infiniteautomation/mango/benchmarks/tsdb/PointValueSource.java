@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Source of point values for a single point, values are supplied in ascending time order.
+ */
+public interface PointValueSource {
+
+    DataPointVO getPoint();
+
+    /**
+     * @param limit maximum number of values
+     * @return stream of the next values, must be consumed before this method is called again
+     */
+    Stream<? extends BatchPointValue> stream(int limit);
+
+    /**
+     * @return timestamp of the next value
+     */
+    Instant getTimestamp();
+
+    /**
+     * @param timestamp timestamp of the next value
+     */
+    void setTimestamp(Instant timestamp);
+}
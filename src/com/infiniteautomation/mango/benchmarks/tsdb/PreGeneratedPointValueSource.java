@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.Instant;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.infiniteautomation.mango.pointvalue.generator.PointValueGenerator;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.db.dao.BatchPointValueImpl;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Replays values which were generated up front into primitive arrays, so that the cost of generating values is not
+ * included in the measurement. When the end of the arrays is reached the values are replayed from the start, shifted
+ * forward in time so that timestamps keep ascending.
+ *
+ * <p>The DAO API takes immutable {@link BatchPointValue} objects which may be retained by the DAO (e.g. batched before
+ * writing, or stored by tsl:memory), so a mutable view can't be reused. By default a {@link BatchPointValueImpl} and
+ * {@link PointValueTime} are allocated per value, and a stream per call. If preallocate is set the value objects are
+ * created up front and replayed without allocating, until the values are replayed shifted in time (after the end of
+ * the arrays is reached, or the timestamp is rewound) when they are allocated again.</p>
+public class PreGeneratedPointValueSource implements PointValueSource {
+
+    private final DataPointVO point;
+    private final long[] timestamps;
+    private final double[] values;
+    /**
+     * values created up front, null unless preallocated
+     */
+    private final BatchPointValue[] preallocated;
+    private final long span;
+    private final ReplaySpliterator spliterator = new ReplaySpliterator();
+
+    private int position;
+    private long offset;
+
+    /**
+     * @param generator generator to take the values from
+     * @param point point to generate values for
+     * @param count number of values to generate
+     * @param period period between values (ms)
+     * @param preallocate keep the generated value objects, so that they can be replayed without allocating
+     */
+    public PreGeneratedPointValueSource(PointValueGenerator generator, DataPointVO point, int count, long period, boolean preallocate) {
+        this.point = point;
+        this.timestamps = new long[count];
+        this.values = new double[count];
+        this.preallocated = preallocate ? new BatchPointValue[count] : null;
+
+        int[] i = new int[1];
+        generator.apply(point).limit(count).forEach(v -> {
+            PointValueTime value = v.getValue();
+            timestamps[i[0]] = value.getTime();
+            values[i[0]] = value.getDoubleValue();
+            if (preallocated != null) {
+                preallocated[i[0]] = new BatchPointValueImpl(point, value);
+            }
+            i[0]++;
+        });
+        if (i[0] != count) {
+            throw new IllegalStateException("Generator supplied " + i[0] + " values, expected " + count);
+        }
+        this.span = timestamps[count - 1] - timestamps[0] + period;
+    }
+
+    @Override
+    public DataPointVO getPoint() {
+        return point;
+    }
+
+    @Override
+    public Stream<? extends BatchPointValue> stream(int limit) {
+        spliterator.remaining = limit;
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    @Override
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(timestamps[position] + offset);
+    }
+
+    @Override
+    public void setTimestamp(Instant timestamp) {
+        this.offset = timestamp.toEpochMilli() - timestamps[position];
+    }
+
+    private BatchPointValue next() {
+        BatchPointValue value = preallocated != null && offset == 0 ? preallocated[position] :
+                new BatchPointValueImpl(point, new PointValueTime(values[position], timestamps[position] + offset));
+        if (++position == timestamps.length) {
+            this.position = 0;
+            this.offset += span;
+        }
+        return value;
+    }
+
+    /**
+     * Reused for every stream, avoids allocating a pipeline per value.
+     */
+    private class ReplaySpliterator implements Spliterator<BatchPointValue> {
+        int remaining;
+
+        @Override
+        public boolean tryAdvance(Consumer<? super BatchPointValue> action) {
+            if (remaining <= 0) {
+                return false;
+            }
+            remaining--;
+            action.accept(next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super BatchPointValue> action) {
+            while (remaining > 0) {
+                remaining--;
+                action.accept(next());
+            }
+        }
+
+        @Override
+        public Spliterator<BatchPointValue> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | NONNULL;
+        }
+    }
+}
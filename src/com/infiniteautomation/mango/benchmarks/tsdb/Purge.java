@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.Insert.InsertParams;
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Deletes (purges) point values. History is inserted during setup and purged from the oldest values forward. Before
+ * each iteration the history is topped up so that it covers the values purged in the previous iteration (with some
+ * headroom), so that history is not inserted between invocations.
+ * The batchDeleteSize parameter sets the db.batchDeleteSize property.
+ *
+ * <p>The withIngest group runs writers and purgers concurrently, the purgerThreads parameter sets the number of purger
+ * threads in each group.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Purge extends TsdbBenchmark {
+
+    @State(Scope.Thread)
+    public static class PurgeState {
+
+        @Param("10000")
+        int valuesInsertedPerPoint;
+
+        long startTimestamp;
+        long endTimestamp;
+
+        long purgeStart;
+        long purgeEnd;
+        /**
+         * purgeStart at the start of the iteration
+         */
+        long iterationPurgeStart;
+
+        /**
+         * all points for this thread
+         */
+        List<DataPointVO> allPoints;
+        List<PointValueSource> sources;
+        int index = 0;
+        /**
+         *  points purged within a single invocation
+         */
+        List<DataPointVO> points;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+            long start = System.nanoTime();
+            this.startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            this.endTimestamp = startTimestamp;
+            int pointsPerThread = mango.totalPoints / mango.threads;
+
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            this.allPoints = mango.createMixedDataPoints(pointsPerThread);
+            this.sources = new ArrayList<>(allPoints.size());
+            for (DataPointVO point : allPoints) {
+                sources.add(mango.createValueSource(point, startTimestamp, generator));
+            }
+            insertHistory(mango, valuesInsertedPerPoint);
+            this.purgeStart = startTimestamp;
+            this.purgeEnd = purgeStart + mango.batchSize * mango.period;
+            this.iterationPurgeStart = purgeStart;
+
+            long duration = System.nanoTime() - start;
+            System.out.printf("Thread '%s' inserted %d values (for %d points, %d values per point) in %.2f seconds.%n",
+                    Thread.currentThread().getName(), valuesInsertedPerPoint * pointsPerThread, pointsPerThread, valuesInsertedPerPoint, TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0);
+        }
+
+        /**
+         * Inserts the next values for every point, continuing from the end of the history.
+         */
+        private void insertHistory(TsdbMockMango mango, int values) {
+            for (PointValueSource source : sources) {
+                mango.pvDao.savePointValues(source.stream(values), values);
+            }
+            this.endTimestamp += values * mango.period;
+        }
+
+        /**
+         * Tops up the history so that the remaining history covers at least valuesInsertedPerPoint, and 1.5 times the
+         * values purged per point in the previous iteration.
+         */
+        @Setup(Level.Iteration)
+        public void refill(TsdbMockMango mango) {
+            long purged = (purgeStart - iterationPurgeStart) / mango.period;
+            long needed = Math.max(valuesInsertedPerPoint, purged + purged / 2);
+            long remaining = (endTimestamp - purgeStart) / mango.period;
+            if (remaining < needed) {
+                insertHistory(mango, (int) (needed - remaining));
+            }
+            this.iterationPurgeStart = purgeStart;
+        }
+
+        @Setup(Level.Invocation)
+        public void nextPurge(TsdbMockMango mango) {
+            int endIndex = index + mango.points;
+            if (endIndex > allPoints.size()) {
+                this.index = 0;
+                endIndex = mango.points;
+
+                // move to next time range
+                this.purgeStart = purgeEnd;
+                this.purgeEnd = purgeStart + mango.batchSize * mango.period;
+
+                // all history purged, the iteration purged more than the refill, insert some more
+                if (purgeEnd > endTimestamp) {
+                    System.err.printf("WARN: Purged all history during the iteration, inserting %d values per point between invocations.%n", valuesInsertedPerPoint);
+                    BenchmarkMetrics.increment("purge.invocationRefills");
+                    insertHistory(mango, valuesInsertedPerPoint);
+                }
+            }
+            this.points = allPoints.subList(index, endIndex);
+            this.index = endIndex;
+        }
+    }
+
+    /**
+     * Inserts batchSize values for the next points before each invocation, which are then deleted in full.
+     */
+    @State(Scope.Thread)
+    public static class SeriesState {
+
+        List<DataPointVO> allPoints;
+        List<PointValueSource> sources;
+        int index = 0;
+        /**
+         *  points deleted within a single invocation
+         */
+        List<DataPointVO> points;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+            long startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            this.allPoints = mango.createMixedDataPoints(mango.totalPoints / mango.threads);
+            this.sources = new ArrayList<>(allPoints.size());
+            for (DataPointVO point : allPoints) {
+                sources.add(mango.createValueSource(point, startTimestamp, generator));
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void nextSeries(TsdbMockMango mango) {
+            int endIndex = index + mango.points;
+            if (endIndex > allPoints.size()) {
+                this.index = 0;
+                endIndex = mango.points;
+            }
+            for (int i = index; i < endIndex; i++) {
+                mango.pvDao.savePointValues(sources.get(i).stream(mango.batchSize), mango.batchSize);
+            }
+            this.points = allPoints.subList(index, endIndex);
+            this.index = endIndex;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class IngestLatency {
+        SingleWriterRecorder recorder;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.recorder = LatencyHistograms.createRecorder("ingest");
+        }
+    }
+
+    @Benchmark
+    public void deleteBefore(TsdbMockMango mango, PurgeState purgeState, Blackhole blackhole) {
+        for (DataPointVO point : purgeState.points) {
+            blackhole.consume(mango.pvDao.deletePointValuesBefore(point, purgeState.purgeEnd));
+        }
+    }
+
+    @Benchmark
+    public void deleteBetween(TsdbMockMango mango, PurgeState purgeState, Blackhole blackhole) {
+        for (DataPointVO point : purgeState.points) {
+            blackhole.consume(mango.pvDao.deletePointValuesBetween(point, purgeState.purgeStart, purgeState.purgeEnd));
+        }
+    }
+
+    @Benchmark
+    public void deleteSeries(TsdbMockMango mango, SeriesState seriesState, Blackhole blackhole) {
+        for (DataPointVO point : seriesState.points) {
+            blackhole.consume(mango.pvDao.deletePointValues(point));
+        }
+    }
+
+    @Benchmark
+    @Group("withIngest")
+    @GroupThreads(1)
+    public void write(TsdbMockMango mango, InsertParams insertParams, IngestLatency ingestLatency) {
+        for (int i = 0; i < mango.points; i++) {
+            var source = insertParams.next();
+            long start = System.nanoTime();
+            mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+            ingestLatency.recorder.recordValue(System.nanoTime() - start);
+        }
+    }
+
+    @Benchmark
+    @Group("withIngest")
+    @GroupThreads(1)
+    public void purge(TsdbMockMango mango, PurgeState purgeState, Blackhole blackhole) {
+        deleteBefore(mango, purgeState, blackhole);
+    }
+}
@@ -5,8 +5,8 @@
 package com.infiniteautomation.mango.benchmarks.tsdb;
 
 import java.time.ZonedDateTime;
-import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -21,6 +21,7 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
 
@@ -49,7 +50,7 @@ public class Read extends TsdbBenchmark {
         long readEnd;
 
         /**
-         * all points for this thread
+         * all points for this thread, or the chunk of the point pool this thread inserted values for
          */
         List<DataPointVO> allPoints;
         int index = 0;
@@ -58,17 +59,29 @@ public class Read extends TsdbBenchmark {
          */
         List<DataPointVO> points;
 
+        PointPool pointPool;
+        final SplittableRandom random = new SplittableRandom();
+
         @Setup(Level.Trial)
-        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+        public void setup(TsdbMockMango mango, PointPool pointPool) throws ExecutionException, InterruptedException {
             long start = System.nanoTime();
+            this.pointPool = pointPool;
             this.startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
             this.endTimestamp = startTimestamp + valuesInsertedPerPoint * mango.period;
-            int pointsPerThread = mango.totalPoints / mango.threads;
+
+            if (pointPool.isPartitioned()) {
+                this.allPoints = mango.createMixedDataPoints(mango.totalPoints / mango.threads);
+            } else {
+                // each thread inserts the values for its chunk of the pool, but reads from the whole pool
+                int thread = pointPool.threadIndex.getAndIncrement();
+                int size = pointPool.points.size();
+                this.allPoints = pointPool.points.subList(Scaling.chunkStart(size, mango.threads, thread), Scaling.chunkEnd(size, mango.threads, thread));
+            }
+            int pointsPerThread = allPoints.size();
 
             PointValueGenerator generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
-            this.allPoints = mango.createDataPoints(pointsPerThread, Collections.emptyMap());
             for (DataPointVO point : allPoints) {
-                var stream = generator.apply(point).limit(valuesInsertedPerPoint);
+                var stream = mango.createValueSource(point, startTimestamp, generator).stream(valuesInsertedPerPoint);
                 mango.pvDao.savePointValues(stream);
             }
             long duration = System.nanoTime() - start;
@@ -84,24 +97,48 @@ public class Read extends TsdbBenchmark {
 
         @Setup(Level.Invocation)
         public void nextRead(TsdbMockMango mango) {
+            if (!pointPool.isPartitioned()) {
+                // select the points from the pool, move to the next time range after reading as many points as partitioned
+                this.points = pointPool.selectDistinct(random, mango.points);
+                this.index += mango.points;
+                if (index > allPoints.size()) {
+                    this.index = 0;
+                    nextTimeRange(mango);
+                }
+                return;
+            }
+
             int endIndex = index + mango.points;
             if (endIndex > allPoints.size()) {
                 this.index = 0;
                 endIndex = mango.points;
-
-                // move to next time range
-                this.readStart = readEnd;
-                this.readEnd = readStart + mango.batchSize * mango.period;
-
-                // loop back to start of data
-                if (readEnd > endTimestamp) {
-                    this.readStart = startTimestamp;
-                    this.readEnd = readStart + mango.batchSize * mango.period;
-                }
+                nextTimeRange(mango);
             }
             this.points = allPoints.subList(index, endIndex);
             this.index = endIndex;
         }
+
+        /**
+         * Records the number of values read for the data type of each point, every read covers batchSize values per
+         * point.
+         */
+        @TearDown(Level.Invocation)
+        public void recordRead(TsdbMockMango mango) {
+            for (DataPointVO point : points) {
+                BenchmarkMetrics.addRate(point.getPointLocator().getDataType() + ".values", mango.batchSize);
+            }
+        }
+
+        private void nextTimeRange(TsdbMockMango mango) {
+            this.readStart = readEnd;
+            this.readEnd = readStart + mango.batchSize * mango.period;
+
+            // loop back to start of data
+            if (readEnd > endTimestamp) {
+                this.readStart = startTimestamp;
+                this.readEnd = readStart + mango.batchSize * mango.period;
+            }
+        }
     }
 
     @Benchmark
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.benchmarks.tsdb.Mixed.GroupState;
+import com.infiniteautomation.mango.benchmarks.tsdb.Mixed.ReaderState;
+import com.infiniteautomation.mango.benchmarks.tsdb.Mixed.WriterState;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+
+/**
+ * Repeated queries for the recent values of the points, e.g. dashboards refreshing the last hour. The writers and
+ * readers are the same as the {@link Mixed} benchmarks, the readers repeatedly query the batchSize * period range
+ * behind the writers so consecutive queries for a point overlap.
+ *
+ * <p>The cached group reads through a {@link RecentWindowCache}, the writers append the values they save to the cache.
+ * The direct group reads from the DAO. Both read one point at a time. The cache hit ratio, the number of values
+ * cached and the heap used per cached value are reported as secondary results, along with the query latency.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadCache extends TsdbBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        /**
+         * Time range (ms) of the values cached for each point, use "X" suffix to multiply by the query range
+         * (batchSize * period).
+         */
+        @Param("2X")
+        String cacheWindow;
+
+        /**
+         * Maximum number of values cached, across all points.
+         */
+        @Param("1000000")
+        long cacheMaxValues;
+
+        RecentWindowCache cache;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) {
+            long window = parseMultiplier(cacheWindow, "X", mango.batchSize * (int) mango.period);
+            this.cache = new RecentWindowCache(mango.pvDao, window, cacheMaxValues);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() {
+            long hits = cache.hits.sumThenReset();
+            long misses = cache.misses.sumThenReset();
+            long bypasses = cache.bypasses.sumThenReset();
+            long total = hits + misses + bypasses;
+            if (total > 0) {
+                BenchmarkMetrics.result("cache.hitRatio", hits / (double) total, "ratio");
+            }
+            BenchmarkMetrics.result("cache.evictions", cache.evictions.sumThenReset(), "#");
+
+            // the benchmark threads are stopped, so the change in heap is the size of the cached values
+            long values = cache.size();
+            long heapBefore = ResourceUsage.usedHeap();
+            cache.clear();
+            long heapAfter = ResourceUsage.usedHeap();
+            BenchmarkMetrics.result("cache.values", values, "#");
+            if (values > 0) {
+                BenchmarkMetrics.result("cache.heapPerValue", (heapBefore - heapAfter) / (double) values, "B");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class QueryLatency {
+        SingleWriterRecorder recorder;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.recorder = LatencyHistograms.createRecorder("query");
+        }
+    }
+
+    @Benchmark
+    @Group("cached")
+    @GroupThreads(1)
+    public void cachedWrite(TsdbMockMango mango, GroupState groupState, WriterState writerState, CacheState cacheState) {
+        for (int i = 0; i < mango.points; i++) {
+            var supplier = writerState.next();
+            List<BatchPointValue> values = supplier.stream().limit(mango.batchSize).collect(Collectors.toList());
+            mango.pvDao.savePointValues(values.stream(), mango.batchSize);
+            cacheState.cache.append(values);
+            groupState.head.accumulate(supplier.getTimestamp().toEpochMilli());
+        }
+    }
+
+    @Benchmark
+    @Group("cached")
+    @GroupThreads(1)
+    public void cachedRead(ReaderState readerState, CacheState cacheState, QueryLatency queryLatency, Blackhole blackhole) {
+        long start = System.nanoTime();
+        cacheState.cache.query(readerState.points, readerState.readStart, readerState.readEnd, blackhole::consume);
+        queryLatency.recorder.recordValue(System.nanoTime() - start);
+    }
+
+    @Benchmark
+    @Group("direct")
+    @GroupThreads(1)
+    public void directWrite(TsdbMockMango mango, GroupState groupState, WriterState writerState) {
+        for (int i = 0; i < mango.points; i++) {
+            var supplier = writerState.next();
+            mango.pvDao.savePointValues(supplier.stream().limit(mango.batchSize), mango.batchSize);
+            groupState.head.accumulate(supplier.getTimestamp().toEpochMilli());
+        }
+    }
+
+    @Benchmark
+    @Group("direct")
+    @GroupThreads(1)
+    public void directRead(TsdbMockMango mango, ReaderState readerState, QueryLatency queryLatency, Blackhole blackhole) {
+        long start = System.nanoTime();
+        mango.pvDao.getPointValuesPerPoint(readerState.points, readerState.readStart, readerState.readEnd, null, TimeOrder.ASCENDING, blackhole::consume);
+        queryLatency.recorder.recordValue(System.nanoTime() - start);
+    }
+}
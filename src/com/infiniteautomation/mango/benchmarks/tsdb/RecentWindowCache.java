@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Read-through cache of the most recent values of each point, in front of a {@link PointValueDao}.
+ *
+ * <p>On a miss the values of the point from (end of the query - window) onwards are loaded from the DAO, after which
+ * the cache holds every value of the point from that timestamp. Values saved by the writers are appended to the
+ * cached points, and values older than the window (relative to the latest value) are evicted. When the cache holds
+ * more than maxValues values, the least recently read points are evicted. Queries for a range longer than the window
+ * bypass the cache.</p>
+ *
+ * <p>Values must be appended in ascending time order for each point.</p>
+ */
+public class RecentWindowCache {
+
+    private final PointValueDao dao;
+    private final long window;
+    private final long maxValues;
+
+    private final Map<Integer, Series> series = new ConcurrentHashMap<>();
+    /**
+     * points in least recently read order, guarded by itself
+     */
+    private final LinkedHashMap<Integer, Series> readOrder = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong size = new AtomicLong();
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder bypasses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    private static class Series {
+        /**
+         * ascending time order, contains values appended during loading until loaded
+         */
+        List<PointValueTime> values = new ArrayList<>();
+        /**
+         * the cache holds every value of the point from this timestamp
+         */
+        long completeFrom;
+        boolean loading = true;
+        boolean evicted;
+    }
+
+    /**
+     * @param window time range (ms) of the values cached for each point
+     * @param maxValues maximum number of values cached, across all points
+     */
+    public RecentWindowCache(PointValueDao dao, long window, long maxValues) {
+        this.dao = dao;
+        this.window = window;
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * Reads the values of each point in the time range [from, to), one point at a time.
+     */
+    public void query(Collection<DataPointVO> points, long from, long to, Consumer<? super PointValueTime> consumer) {
+        for (DataPointVO point : points) {
+            if (to - from > window) {
+                bypasses.increment();
+                dao.getPointValuesPerPoint(List.of(point), from, to, null, TimeOrder.ASCENDING, consumer);
+            } else if (!read(point, from, to, consumer)) {
+                misses.increment();
+                load(point, from, to, consumer);
+            } else {
+                hits.increment();
+            }
+        }
+    }
+
+    /**
+     * Appends values to the cached points, must be called after the values are saved to the DAO.
+     */
+    public void append(Collection<? extends BatchPointValue> values) {
+        for (BatchPointValue value : values) {
+            Series s = series.get(value.getPoint().getId());
+            if (s == null) {
+                continue;
+            }
+            synchronized (s) {
+                if (s.evicted) {
+                    continue;
+                }
+                s.values.add(value.getValue());
+                size.incrementAndGet();
+                if (!s.loading) {
+                    trim(s);
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @return number of values cached
+     */
+    public long size() {
+        return size.get();
+    }
+
+    public void clear() {
+        synchronized (readOrder) {
+            for (Series s : readOrder.values()) {
+                remove(s);
+            }
+            readOrder.clear();
+        }
+        series.clear();
+    }
+
+    private boolean read(DataPointVO point, long from, long to, Consumer<? super PointValueTime> consumer) {
+        Series s;
+        synchronized (readOrder) {
+            s = readOrder.get(point.getId());
+        }
+        if (s == null) {
+            return false;
+        }
+        synchronized (s) {
+            if (s.loading || s.evicted || from < s.completeFrom) {
+                return false;
+            }
+            List<PointValueTime> values = s.values;
+            for (int i = firstIndex(values, from); i < values.size(); i++) {
+                PointValueTime value = values.get(i);
+                if (value.getTime() >= to) {
+                    break;
+                }
+                consumer.accept(value);
+            }
+            return true;
+        }
+    }
+
+    private void load(DataPointVO point, long from, long to, Consumer<? super PointValueTime> consumer) {
+        Series s = new Series();
+        s.completeFrom = to - window;
+        Series existing = series.putIfAbsent(point.getId(), s);
+        if (existing != null) {
+            // being loaded by another reader
+            dao.getPointValuesPerPoint(List.of(point), from, to, null, TimeOrder.ASCENDING, consumer);
+            return;
+        }
+
+        // load to the end of the data, values saved during the load are appended to the series
+        List<PointValueTime> loaded = new ArrayList<>();
+        dao.getPointValuesPerPoint(List.of(point), s.completeFrom, Long.MAX_VALUE, null, TimeOrder.ASCENDING, loaded::add);
+        synchronized (s) {
+            long last = loaded.isEmpty() ? Long.MIN_VALUE : loaded.get(loaded.size() - 1).getTime();
+            for (PointValueTime value : s.values) {
+                if (value.getTime() > last) {
+                    loaded.add(value);
+                }
+            }
+            size.addAndGet(loaded.size() - s.values.size());
+            s.values = loaded;
+            s.loading = false;
+            trim(s);
+        }
+        synchronized (readOrder) {
+            readOrder.put(point.getId(), s);
+        }
+        evict();
+        if (!read(point, from, to, consumer)) {
+            // evicted already
+            dao.getPointValuesPerPoint(List.of(point), from, to, null, TimeOrder.ASCENDING, consumer);
+        }
+    }
+
+    /**
+     * Removes the values older than the window, relative to the latest value
+     */
+    private void trim(Series s) {
+        if (s.values.isEmpty()) {
+            return;
+        }
+        long start = s.values.get(s.values.size() - 1).getTime() - window;
+        if (start > s.completeFrom) {
+            int count = firstIndex(s.values, start);
+            s.values.subList(0, count).clear();
+            s.completeFrom = start;
+            size.addAndGet(-count);
+        }
+    }
+
+    /**
+     * Evicts the least recently read points until the cache holds at most maxValues values
+     */
+    private void evict() {
+        if (size.get() <= maxValues) {
+            return;
+        }
+        synchronized (readOrder) {
+            Iterator<Map.Entry<Integer, Series>> it = readOrder.entrySet().iterator();
+            while (size.get() > maxValues && it.hasNext()) {
+                var entry = it.next();
+                it.remove();
+                series.remove(entry.getKey());
+                remove(entry.getValue());
+                evictions.increment();
+            }
+        }
+    }
+
+    private void remove(Series s) {
+        synchronized (s) {
+            if (!s.evicted) {
+                s.evicted = true;
+                size.addAndGet(-s.values.size());
+                s.values = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * @return index of the first value with a timestamp greater or equal to time
+     */
+    private static int firstIndex(List<PointValueTime> values, long time) {
+        int low = 0;
+        int high = values.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values.get(mid).getTime() < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
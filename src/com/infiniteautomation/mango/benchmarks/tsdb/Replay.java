@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.db.dao.BatchPointValueImpl;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Replays a {@link TraceFile} of captured point values, in their original order. Convert a CSV export to a trace file
+ * using {@link TraceConverter}. The points in the trace are split between the threads by point index, during setup the
+ * trace is partitioned into a temporary trace file per thread so each thread only reads the records for its own points.
+ * When the end of the trace is reached it is replayed again, shifted forward in time.
+ *
+ * <p>When paced via replaySpeed, the batch is read and the thread waits for its arrival time before each invocation,
+ * outside the measured time. The lag between the arrival time of the last value in the batch and the time the batch
+ * was saved is reported as a secondary result, i.e. whether the implementation keeps up with the replayed rate.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Replay extends TsdbBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Trace {
+
+        /**
+         * Path to the trace file
+         */
+        @Param("")
+        String traceFile;
+
+        /**
+         * Replay speed relative to the original arrival times, e.g. 10 replays 10x faster than real time.
+         * 0 replays as fast as possible.
+         */
+        @Param("0")
+        double replaySpeed;
+
+        /**
+         * data type of each point index
+         */
+        DataType[] dataTypes;
+        long span;
+        /**
+         * records of the points owned by each thread
+         */
+        Path[] partitions;
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) throws IOException {
+            if (traceFile.isEmpty()) {
+                throw new IllegalStateException("The traceFile parameter must be set");
+            }
+
+            this.partitions = new Path[mango.threads];
+            TraceWriter[] writers = new TraceWriter[mango.threads];
+            DataType[] types = new DataType[0];
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            try (var reader = new TraceReader(Path.of(traceFile))) {
+                for (int i = 0; i < mango.threads; i++) {
+                    partitions[i] = Files.createTempFile("replay", ".trace");
+                    writers[i] = new TraceWriter(partitions[i]);
+                }
+                while (reader.next()) {
+                    int index = reader.getPointIndex();
+                    if (index >= types.length) {
+                        types = Arrays.copyOf(types, Math.max(index + 1, types.length * 2));
+                    }
+                    if (types[index] == null) {
+                        types[index] = reader.getDataType();
+                    }
+                    first = Math.min(first, reader.getTimestamp());
+                    last = Math.max(last, reader.getTimestamp());
+                    writers[index % mango.threads].write(index, reader.getTimestamp(), reader.getDataType(), reader.getValue());
+                }
+                if (reader.getRecordCount() == 0) {
+                    throw new IllegalStateException("Trace file is empty: " + traceFile);
+                }
+            } finally {
+                for (TraceWriter writer : writers) {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
+            }
+
+            int length = types.length;
+            while (length > 0 && types[length - 1] == null) {
+                length--;
+            }
+            this.dataTypes = Arrays.copyOf(types, length);
+            this.span = last - first + 1;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            for (Path partition : partitions) {
+                if (partition != null) {
+                    Files.deleteIfExists(partition);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReplayState {
+
+        TraceReader reader;
+        /**
+         * points owned by this thread, indexed by point index
+         */
+        DataPointVO[] points;
+        long offset;
+        /**
+         * time (System.nanoTime) at which the iteration started, and the trace timestamp replayed at that time
+         */
+        long replayStart;
+        long paceFrom;
+        /**
+         * time (System.nanoTime) at which the last value in the batch arrives, when paced
+         */
+        long arrival;
+        SingleWriterRecorder lagRecorder;
+        final List<BatchPointValue> batch = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, Trace trace) throws IOException, ExecutionException, InterruptedException {
+            int thread = trace.threadIndex.getAndIncrement();
+            this.reader = new TraceReader(trace.partitions[thread]);
+            this.points = new DataPointVO[trace.dataTypes.length];
+            if (reader.getRecordCount() == 0) {
+                throw new IllegalStateException("Trace file does not contain enough points for " + mango.threads + " threads");
+            }
+
+            // create the points for this thread, grouped by data type
+            Map<DataType, List<Integer>> indexesByType = new EnumMap<>(DataType.class);
+            for (int i = thread; i < trace.dataTypes.length; i += mango.threads) {
+                if (trace.dataTypes[i] != null) {
+                    indexesByType.computeIfAbsent(trace.dataTypes[i], k -> new ArrayList<>()).add(i);
+                }
+            }
+            for (var entry : indexesByType.entrySet()) {
+                var created = mango.createDataPoints(entry.getValue().size(), entry.getKey());
+                for (int i = 0; i < created.size(); i++) {
+                    points[entry.getValue().get(i)] = created.get(i);
+                }
+            }
+            if (trace.replaySpeed > 0) {
+                this.lagRecorder = LatencyHistograms.createRecorder("replayLag");
+            }
+        }
+
+        /**
+         * Paces each iteration from its own start, so that the time spent outside the measurement (e.g. between
+         * iterations) is not counted as lag. The trace continues from its position in the previous iteration.
+         */
+        @Setup(Level.Iteration)
+        public void setupIteration() {
+            this.replayStart = System.nanoTime();
+            this.paceFrom = Long.MIN_VALUE;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            reader.close();
+        }
+
+        /**
+         * Fills the batch with the next records of this thread, then waits until the arrival time of the last value
+         * in the batch if paced.
+         */
+        @Setup(Level.Invocation)
+        public void nextBatch(TsdbMockMango mango, Trace trace) throws IOException {
+            int size = mango.points * mango.batchSize;
+            batch.clear();
+            while (batch.size() < size) {
+                if (!reader.next()) {
+                    // replay the trace again, shifted forward in time
+                    reader.rewind();
+                    this.offset += trace.span;
+                    continue;
+                }
+                long timestamp = reader.getTimestamp() + offset;
+                batch.add(new BatchPointValueImpl(points[reader.getPointIndex()], new PointValueTime(toDataValue(reader), timestamp)));
+            }
+
+            if (trace.replaySpeed > 0) {
+                if (paceFrom == Long.MIN_VALUE) {
+                    this.paceFrom = batch.get(0).getValue().getTime();
+                }
+                long lastTimestamp = batch.get(batch.size() - 1).getValue().getTime();
+                this.arrival = replayStart + (long) (TimeUnit.MILLISECONDS.toNanos(lastTimestamp - paceFrom) / trace.replaySpeed);
+                long delay;
+                while ((delay = arrival - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+            }
+        }
+
+        private static DataValue toDataValue(TraceReader reader) {
+            double value = reader.getValue();
+            switch (reader.getDataType()) {
+                case BINARY:
+                    return BinaryValue.getInstance(value != 0);
+                case MULTISTATE:
+                    return new MultistateValue((int) value);
+                default:
+                    return new NumericValue(value);
+            }
+        }
+    }
+
+    @Benchmark
+    public void replay(TsdbMockMango mango, ReplayState replayState) {
+        mango.pvDao.savePointValues(replayState.batch.stream(), mango.batchSize);
+        if (replayState.lagRecorder != null) {
+            replayState.lagRecorder.recordValue(Math.max(0, System.nanoTime() - replayState.arrival));
+        }
+    }
+}
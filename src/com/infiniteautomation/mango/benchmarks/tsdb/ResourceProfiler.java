@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Runs inside the forked benchmark JVM and reports the system resources used during each iteration, normalized per
+ * operation (i.e. per point value inserted or read). Reports I/O from /proc/self/io, page faults from /proc/self/stat,
+ * voluntary context switches (e.g. blocking on fsync) from /proc/self/status, growth of the space used on the file
+ * system containing the Mango data directory, GC time, and CPU time split between the benchmark threads and all other
+ * threads (e.g. Mango/DAO background threads).
+ *
+ * <p>Not added by default, enable it with "-prof com.infiniteautomation.mango.benchmarks.tsdb.ResourceProfiler". The
+ * disk usage is read from the file system statistics rather than by walking the data directory, so that sampling does
+ * not disturb the caches of the database (e.g. ias-tsdb shards).</p>
+ *
+ * <p>The /proc values are only available on Linux, they are omitted elsewhere.</p>
+ */
+public class ResourceProfiler implements InternalProfiler {
+
+    private static final Path PROC_IO = Path.of("/proc/self/io");
+    private static final Path PROC_STAT = Path.of("/proc/self/stat");
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private Map<String, Long> before;
+
+    @Override
+    public String getDescription() {
+        return "Reports I/O, page faults, disk usage, GC and CPU time per operation";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        this.before = sample();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+        Map<String, Long> after = sample();
+        long ops = result.getMetadata().getMeasuredOps();
+
+        List<Result> results = new ArrayList<>();
+        if (ops <= 0) {
+            return results;
+        }
+        perOp(results, "io.readBytes", "read_bytes", after, ops, "B/op");
+        perOp(results, "io.writeBytes", "write_bytes", after, ops, "B/op");
+        perOp(results, "io.readChars", "rchar", after, ops, "B/op");
+        perOp(results, "io.writeChars", "wchar", after, ops, "B/op");
+        perOp(results, "io.readCalls", "syscr", after, ops, "#/op");
+        perOp(results, "io.writeCalls", "syscw", after, ops, "#/op");
+        perOp(results, "pageFaults.minor", "minflt", after, ops, "#/op");
+        perOp(results, "pageFaults.major", "majflt", after, ops, "#/op");
+        perOp(results, "contextSwitches.voluntary", "voluntary_ctxt_switches", after, ops, "#/op");
+        perOp(results, "disk.growth", "diskSize", after, ops, "B/op");
+        perOp(results, "gc.time", "gcTime", after, ops, "ns/op");
+        perOp(results, "cpu.time", "cpuTime", after, ops, "ns/op");
+        perOp(results, "cpu.benchmarkThreads", "benchmarkCpuTime", after, ops, "ns/op");
+        if (after.containsKey("diskSize")) {
+            results.add(new ScalarResult("disk.size", after.get("diskSize"), "B", AggregationPolicy.MAX));
+        }
+        return results;
+    }
+
+    private void perOp(List<Result> results, String label, String key, Map<String, Long> after, long ops, String unit) {
+        Long start = before.get(key);
+        Long end = after.get(key);
+        if (start != null && end != null) {
+            results.add(new ScalarResult(label, (end - start) / (double) ops, unit, AggregationPolicy.AVG));
+        }
+    }
+
+    private Map<String, Long> sample() {
+        Map<String, Long> values = new HashMap<>();
+        readKeyValues(PROC_IO, values);
+        readKeyValues(PROC_STATUS, values);
+        readStat(values);
+
+        Path dataPath = Common.MA_DATA_PATH;
+        if (dataPath != null) {
+            long used = ResourceUsage.fileSystemUsed(dataPath);
+            if (used >= 0) {
+                values.put("diskSize", used);
+            }
+        }
+
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        values.put("gcTime", gcTime * 1_000_000);
+
+        if (threadMXBean.isThreadCpuTimeSupported()) {
+            long cpuTime = 0;
+            long benchmarkCpuTime = 0;
+            long[] ids = threadMXBean.getAllThreadIds();
+            ThreadInfo[] infos = threadMXBean.getThreadInfo(ids);
+            for (int i = 0; i < ids.length; i++) {
+                long time = threadMXBean.getThreadCpuTime(ids[i]);
+                if (time > 0 && infos[i] != null) {
+                    cpuTime += time;
+                    if (infos[i].getThreadName().contains("jmh-worker")) {
+                        benchmarkCpuTime += time;
+                    }
+                }
+            }
+            // threads which terminated during the iteration are not included
+            values.put("cpuTime", cpuTime);
+            values.put("benchmarkCpuTime", benchmarkCpuTime);
+        }
+        return values;
+    }
+
+    /**
+     * Reads lines in the format "key: value" (e.g. /proc/self/io), values with units or multiple fields are ignored
+     */
+    private static void readKeyValues(Path file, Map<String, Long> values) {
+        if (!Files.isReadable(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file)) {
+                int separator = line.indexOf(':');
+                if (separator > 0) {
+                    try {
+                        values.put(line.substring(0, separator).trim(), Long.parseLong(line.substring(separator + 1).trim()));
+                    } catch (NumberFormatException e) {
+                        // not a single number
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // not available
+        }
+    }
+
+    /**
+     * Reads the minor and major page fault counts from /proc/self/stat
+     */
+    private static void readStat(Map<String, Long> values) {
+        if (!Files.isReadable(PROC_STAT)) {
+            return;
+        }
+        try {
+            String stat = Files.readString(PROC_STAT);
+            // the command name may contain spaces, fields are counted from after its closing bracket
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            values.put("minflt", Long.parseLong(fields[7]));
+            values.put("majflt", Long.parseLong(fields[9]));
+        } catch (IOException | RuntimeException e) {
+            // not available
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Measurements of the heap and disk space used, shared by the benchmarks and profilers.
+ */
+final class ResourceUsage {
+
+    private ResourceUsage() {
+    }
+
+    /**
+     * @return heap used (bytes) after a full GC
+     */
+    static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return total size of the files in the directory, files which are deleted while walking the directory are ignored
+     */
+    static long directorySize(Path directory) {
+        long[] size = new long[1];
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // deleted while walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // not available
+        }
+        return size[0];
+    }
+
+    /**
+     * Reads the file system statistics instead of walking the directory, so it is cheap and does not disturb the
+     * caches of the database. Includes files written by other processes to the same file system.
+     *
+     * @return space used (bytes) on the file system containing the path, or -1 if not available
+     */
+    static long fileSystemUsed(Path path) {
+        try {
+            FileStore store = Files.getFileStore(path);
+            return store.getTotalSpace() - store.getUnallocatedSpace();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
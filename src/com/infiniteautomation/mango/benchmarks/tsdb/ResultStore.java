@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.math3.stat.descriptive.StatisticalSummaryValues;
+import org.apache.commons.math3.stat.inference.TTest;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.util.Statistics;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stores the results of each run as JSON (parameters, environment and scores with their error and statistics), and
+ * compares the results against a stored baseline to detect regressions.
+ *
+ * <p>A result is compared with the baseline result with the same benchmark and parameters. It is a regression if its
+ * score is worse than the baseline by more than regressionThreshold, and the difference is statistically significant
+ * according to Welch's t-test at regressionConfidence. The t-test requires at least 2 measurement iterations in both
+ * runs, a change larger than the threshold with fewer iterations is reported as inconclusive and is not a regression.</p>
+ */
+public class ResultStore {
+
+    static final String RESULTS_DIRECTORY_PARAM = "resultsDirectory";
+    static final String BASELINE_PARAM = "baseline";
+    static final String REGRESSION_THRESHOLD_PARAM = "regressionThreshold";
+    static final String REGRESSION_CONFIDENCE_PARAM = "regressionConfidence";
+
+    /**
+     * Parameters which only control the runner, these do not affect the results so are not stored
+     */
+    private static final Set<String> RUNNER_PARAMS = Set.of(RESULTS_DIRECTORY_PARAM, BASELINE_PARAM,
+            REGRESSION_THRESHOLD_PARAM, REGRESSION_CONFIDENCE_PARAM, SaturationSearch.SATURATION_PARAM,
+            "saturationScale", "saturationPlateau", "saturationMaxLatency", "saturationMaxThreads", "saturationOutput");
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Writes the results to a new file in the resultsDirectory, if set.
+     *
+     * @return the file written, or null if the resultsDirectory is empty
+     */
+    static Path save(Options options, Collection<RunResult> results) throws RunnerException {
+        String directory = TsdbBenchmark.parameter(options, RESULTS_DIRECTORY_PARAM);
+        if (directory.isEmpty() || results.isEmpty()) {
+            return null;
+        }
+
+        StoredRun run = new StoredRun();
+        run.timestamp = ZonedDateTime.now().toString();
+        run.environment = environment(results.iterator().next().getParams());
+        for (RunResult result : results) {
+            run.results.add(StoredResult.from(result));
+        }
+
+        Path file = Path.of(directory).resolve("run-" + FILE_NAME_FORMAT.format(ZonedDateTime.now()) + ".json");
+        try {
+            Files.createDirectories(file.getParent());
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), run);
+        } catch (IOException e) {
+            throw new RunnerException("Failed to write " + file, e);
+        }
+        System.out.printf("Wrote results to %s%n", file.toAbsolutePath());
+        return file;
+    }
+
+    /**
+     * Compares the results against the baseline file, if set, and prints the comparison.
+     *
+     * @return true if any result regressed compared to the baseline
+     */
+    static boolean compareToBaseline(Options options, Collection<RunResult> results) throws RunnerException {
+        String baselineFile = TsdbBenchmark.parameter(options, BASELINE_PARAM);
+        if (baselineFile.isEmpty()) {
+            return false;
+        }
+        double threshold = Double.parseDouble(TsdbBenchmark.parameter(options, REGRESSION_THRESHOLD_PARAM));
+        double confidence = regressionConfidence(options);
+
+        StoredRun baseline;
+        try {
+            baseline = MAPPER.readValue(Path.of(baselineFile).toFile(), StoredRun.class);
+        } catch (IOException e) {
+            throw new RunnerException("Failed to read baseline " + baselineFile, e);
+        }
+
+        Map<String, StoredResult> baselineResults = new HashMap<>();
+        for (StoredResult result : baseline.results) {
+            baselineResults.put(result.key(), result);
+        }
+
+        boolean regressed = false;
+        System.out.printf("%nComparison with baseline %s (%s)%n", baselineFile, baseline.timestamp);
+        System.out.printf("%-12s %10s %16s %16s  %s%n", "Status", "Change", "Baseline", "Current", "Benchmark");
+        for (RunResult runResult : results) {
+            StoredResult current = StoredResult.from(runResult);
+            StoredResult previous = baselineResults.remove(current.key());
+            if (previous == null) {
+                System.out.printf("%-12s %10s %16s %16.3f  %s%n", "NEW", "", "", current.score, current.describe());
+                continue;
+            }
+
+            double change = (current.score - previous.score) / previous.score;
+            // higher is better for throughput, lower is better for the time based modes
+            double worse = current.mode.equals(Mode.Throughput.shortLabel()) ? -change : change;
+            String status = "OK";
+            if (Math.abs(change) > threshold) {
+                if (previous.samples < 2 || current.samples < 2) {
+                    status = "INCONCLUSIVE";
+                } else if (isSignificant(previous, current, confidence)) {
+                    status = worse > 0 ? "REGRESSION" : "IMPROVEMENT";
+                    regressed |= worse > 0;
+                }
+            }
+            System.out.printf("%-12s %+9.1f%% %16.3f %16.3f  %s%n", status, change * 100, previous.score, current.score, current.describe());
+        }
+        for (StoredResult missing : baselineResults.values()) {
+            System.out.printf("%-12s %10s %16.3f %16s  %s%n", "MISSING", "", missing.score, "", missing.describe());
+        }
+        return regressed;
+    }
+
+    /**
+     * Fails if a baseline is set and fewer than 2 measurement iterations are configured, since every comparison would
+     * be inconclusive. The benchmarks are annotated with a single measurement iteration, so -i must be set.
+     */
+    static void checkBaseline(Options options) {
+        if (!TsdbBenchmark.parameter(options, BASELINE_PARAM).isEmpty() && options.getMeasurementIterations().orElse(1) < 2) {
+            throw new IllegalStateException("Comparing with a baseline requires at least 2 measurement iterations, e.g. -i 5");
+        }
+    }
+
+    /**
+     * @return the regressionConfidence, fails if the t-test does not support it
+     */
+    static double regressionConfidence(Options options) {
+        double confidence = Double.parseDouble(TsdbBenchmark.parameter(options, REGRESSION_CONFIDENCE_PARAM));
+        if (confidence < 0.5 || confidence >= 1) {
+            throw new IllegalStateException("regressionConfidence must be at least 0.5 and less than 1");
+        }
+        return confidence;
+    }
+
+    private static boolean isSignificant(StoredResult baseline, StoredResult current, double confidence) {
+        var a = new StatisticalSummaryValues(baseline.score, baseline.variance, baseline.samples, Double.NaN, Double.NaN, Double.NaN);
+        var b = new StatisticalSummaryValues(current.score, current.variance, current.samples, Double.NaN, Double.NaN, Double.NaN);
+        if (a.getVariance() == 0 && b.getVariance() == 0) {
+            return true;
+        }
+        return new TTest().tTest(a, b, 1 - confidence);
+    }
+
+    /**
+     * @return the parameters which affect the result, i.e. excluding the parameters which only control the runner
+     */
+    static Map<String, String> resultParams(BenchmarkParams params) {
+        Map<String, String> result = new TreeMap<>();
+        for (String key : params.getParamsKeys()) {
+            if (!RUNNER_PARAMS.contains(key)) {
+                result.put(key, params.getParam(key));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> environment(BenchmarkParams params) {
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("cores", TsdbBenchmark.NUM_CPU_CORES);
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"));
+        environment.put("jdkVersion", params.getJdkVersion());
+        environment.put("vmName", params.getVmName());
+        environment.put("vmVersion", params.getVmVersion());
+        environment.put("jmhVersion", params.getJmhVersion());
+        environment.put("jvmArgs", params.getJvmArgs());
+        environment.put("maxHeap", maxHeap(params.getJvmArgs()));
+        return environment;
+    }
+
+    /**
+     * @return maximum heap size (bytes) of the forked JVM, from -Xmx or else the same as this JVM
+     */
+    private static long maxHeap(Collection<String> jvmArgs) {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        for (String arg : jvmArgs) {
+            if (arg.startsWith("-Xmx")) {
+                String size = arg.substring(4).toUpperCase();
+                char suffix = size.charAt(size.length() - 1);
+                int shift = suffix == 'K' ? 10 : suffix == 'M' ? 20 : suffix == 'G' ? 30 : suffix == 'T' ? 40 : 0;
+                maxHeap = Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+            }
+        }
+        return maxHeap;
+    }
+
+    public static class StoredRun {
+        public String timestamp;
+        public Map<String, Object> environment;
+        public List<StoredResult> results = new ArrayList<>();
+    }
+
+    public static class StoredScore {
+        public double score;
+        public double scoreError;
+        public String scoreUnit;
+    }
+
+    public static class StoredResult extends StoredScore {
+        public String benchmark;
+        public String mode;
+        public int threads;
+        public Map<String, String> params = new TreeMap<>();
+        /**
+         * number of measurement iterations
+         */
+        public long samples;
+        public double variance;
+        public Map<String, StoredScore> secondaryResults = new TreeMap<>();
+
+        static StoredResult from(RunResult runResult) {
+            BenchmarkParams params = runResult.getParams();
+            Result<?> primary = runResult.getPrimaryResult();
+            Statistics statistics = primary.getStatistics();
+
+            StoredResult result = new StoredResult();
+            result.benchmark = params.getBenchmark();
+            result.mode = params.getMode().shortLabel();
+            result.threads = params.getThreads();
+            result.params.putAll(resultParams(params));
+            result.score = primary.getScore();
+            result.scoreError = primary.getScoreError();
+            result.scoreUnit = primary.getScoreUnit();
+            result.samples = statistics.getN();
+            result.variance = statistics.getN() > 1 ? statistics.getVariance() : 0;
+            for (var entry : runResult.getSecondaryResults().entrySet()) {
+                StoredScore score = new StoredScore();
+                score.score = entry.getValue().getScore();
+                score.scoreError = entry.getValue().getScoreError();
+                score.scoreUnit = entry.getValue().getScoreUnit();
+                result.secondaryResults.put(entry.getKey(), score);
+            }
+            return result;
+        }
+
+        String key() {
+            return benchmark + " " + mode + " " + params;
+        }
+
+        String describe() {
+            return String.format("%s %s threads=%s points=%s batchSize=%s", benchmark, params.get("implementation"),
+                    params.get(TsdbBenchmark.THREADS_PARAM), params.get(TsdbBenchmark.POINTS_PARAM), params.get(TsdbBenchmark.BATCH_SIZE_PARAM));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.infiniteautomation.mango.pointvalue.generator.PointValueGenerator;
+import com.infiniteautomation.mango.quantize.AnalogStatisticsQuantizer;
+import com.infiniteautomation.mango.quantize.BucketCalculator;
+import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.pointvalue.AggregateDao;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Aggregates (rolls up) values into statistics over fixed periods, e.g. hourly min/max/avg/first/last.
+ * Each thread inserts rollupHistory worth of values (one every rollupValuePeriod ms) for its own numeric points, each
+ * query aggregates the entire history of "points" number of points. The dataTypes parameter is not used.
+ * The values and periods aggregated per second are recorded as the rollup.values and rollup.periods results.
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Rollup extends TsdbBenchmark {
+
+    @State(Scope.Thread)
+    public static class RollupState {
+
+        /**
+         * Unit of the rollup period, see {@link ChronoUnit}
+         */
+        @Param({"MINUTES", "HOURS", "DAYS"})
+        String rollupUnit;
+
+        /**
+         * Number of units in each rollup period
+         */
+        @Param("1")
+        int rollupPeriods;
+
+        /**
+         * Duration of the history inserted for each point, ISO-8601 format, see {@link Duration#parse(CharSequence)}
+         */
+        @Param("P7D")
+        String rollupHistory;
+
+        /**
+         * Period (ms) between the inserted values, independent of the period parameter so that a long history
+         * can be inserted without inserting a large number of values
+         */
+        @Param("60000")
+        long rollupValuePeriod;
+
+        ChronoUnit unit;
+        AggregateDao aggregateDao;
+
+        long startTimestamp;
+        long endTimestamp;
+        int valuesPerPoint;
+        long periodsPerPoint;
+
+        List<DataPointVO> allPoints;
+        int index = 0;
+        /**
+         *  points aggregated within a single invocation
+         */
+        List<DataPointVO> points;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException {
+            this.unit = ChronoUnit.valueOf(rollupUnit);
+            Duration period = unit.getDuration().multipliedBy(rollupPeriods);
+            Duration history = Duration.parse(rollupHistory);
+            if (history.compareTo(period) < 0) {
+                throw new IllegalStateException("The rollupHistory is shorter than a single rollup period");
+            }
+
+            this.startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            this.valuesPerPoint = (int) (history.toMillis() / rollupValuePeriod);
+            this.endTimestamp = startTimestamp + (long) valuesPerPoint * rollupValuePeriod;
+            this.periodsPerPoint = (endTimestamp - startTimestamp + period.toMillis() - 1) / period.toMillis();
+            this.aggregateDao = mango.pvDao.getAggregateDao(period);
+
+            long start = System.nanoTime();
+            this.allPoints = mango.createDataPoints(mango.totalPoints / mango.threads, DataType.NUMERIC);
+            PointValueGenerator generator = new BrownianPointValueGenerator(startTimestamp, rollupValuePeriod);
+            for (DataPointVO point : allPoints) {
+                mango.pvDao.savePointValues(mango.createValueSource(point, startTimestamp, generator).stream(valuesPerPoint));
+            }
+            long duration = System.nanoTime() - start;
+            System.out.printf("Thread '%s' inserted %d values (for %d points, %d values per point) in %.2f seconds.%n",
+                    Thread.currentThread().getName(), (long) valuesPerPoint * allPoints.size(), allPoints.size(), valuesPerPoint, TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0);
+        }
+
+        @Setup(Level.Invocation)
+        public void nextPoints(TsdbMockMango mango) {
+            int endIndex = index + mango.points;
+            if (endIndex > allPoints.size()) {
+                this.index = 0;
+                endIndex = mango.points;
+            }
+            this.points = allPoints.subList(index, endIndex);
+            this.index = endIndex;
+        }
+
+        /**
+         * Every operation aggregates the entire history of the points.
+         */
+        @TearDown(Level.Invocation)
+        public void recordAggregated() {
+            BenchmarkMetrics.addRate("rollup.values", (long) valuesPerPoint * points.size());
+            BenchmarkMetrics.addRate("rollup.periods", periodsPerPoint * points.size());
+        }
+
+        /**
+         * @return a quantizer for each point being read, statistics for each period are consumed by the blackhole
+         */
+        Map<Integer, PointQuantizer> createQuantizers(Blackhole blackhole) {
+            ZonedDateTime from = toDate(startTimestamp);
+            ZonedDateTime to = toDate(endTimestamp);
+
+            Map<Integer, PointQuantizer> quantizers = new HashMap<>(points.size());
+            for (DataPointVO point : points) {
+                BucketCalculator bucketCalculator = new TimePeriodBucketCalculator(from, to, unit, rollupPeriods);
+                var quantizer = new AnalogStatisticsQuantizer(bucketCalculator, blackhole::consume);
+                quantizers.put(point.getSeriesId(), new PointQuantizer(quantizer, startTimestamp, endTimestamp));
+            }
+            return quantizers;
+        }
+    }
+
+    /**
+     * Feeds the values of a wide bookend query into a quantizer.
+     */
+    static class PointQuantizer {
+        final AnalogStatisticsQuantizer quantizer;
+        final long from;
+        final long to;
+        boolean started;
+
+        PointQuantizer(AnalogStatisticsQuantizer quantizer, long from, long to) {
+            this.quantizer = quantizer;
+            this.from = from;
+            this.to = to;
+        }
+
+        void accept(IdPointValueTime value) {
+            if (!started) {
+                this.started = true;
+                quantizer.firstValue(value, value.getTime() < from);
+            } else if (value.getTime() >= to) {
+                quantizer.lastValue(value, true);
+            } else {
+                quantizer.accept(value);
+            }
+        }
+
+        void done() {
+            quantizer.done();
+        }
+    }
+
+    static ZonedDateTime toDate(long timestamp) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public void clientSideCombined(TsdbMockMango mango, RollupState rollupState, Blackhole blackhole) {
+        var quantizers = rollupState.createQuantizers(blackhole);
+        mango.pvDao.wideBookendQueryCombined(rollupState.points, rollupState.startTimestamp, rollupState.endTimestamp, null,
+                v -> quantizers.get(v.getSeriesId()).accept(v));
+        quantizers.values().forEach(PointQuantizer::done);
+    }
+
+    @Benchmark
+    public void clientSidePerPoint(TsdbMockMango mango, RollupState rollupState, Blackhole blackhole) {
+        var quantizers = rollupState.createQuantizers(blackhole);
+        mango.pvDao.wideBookendQueryPerPoint(rollupState.points, rollupState.startTimestamp, rollupState.endTimestamp, null,
+                v -> quantizers.get(v.getSeriesId()).accept(v));
+        quantizers.values().forEach(PointQuantizer::done);
+    }
+
+    /**
+     * Uses the implementation's aggregate DAO, which aggregates in the database where supported (e.g. TSL implementations).
+     * Other implementations fall back to the default (client side) aggregation.
+     */
+    @Benchmark
+    public void aggregateDao(RollupState rollupState, Blackhole blackhole) {
+        ZonedDateTime from = toDate(rollupState.startTimestamp);
+        ZonedDateTime to = toDate(rollupState.endTimestamp);
+        for (DataPointVO point : rollupState.points) {
+            try (var stream = rollupState.aggregateDao.query(point, from, to, null)) {
+                stream.forEach(blackhole::consume);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.SingleWriterRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.infiniteautomation.mango.benchmarks.MockMango.SetSecurityContext;
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.infiniteautomation.mango.spring.service.DataPointService;
+import com.infiniteautomation.mango.spring.service.DataSourceService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.EventDetectorDao;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.event.detector.AnalogHighLimitDetectorVO;
+
+/**
+ * Inserts values through the runtime, i.e. via {@link DataPointRT#setPointValue}, rather than calling the
+ * PointValueDao directly. The values pass through the logging type filter, the point value cache, the point's event
+ * detectors and (depending on the implementation) the batch write-behind before reaching the DAO.
+ *
+ * <p>The time spent in the runtime is reported per value as a secondary result. Set timeDaoCalls=true to also report
+ * the time spent in the DAO, the remainder is the cost of the runtime itself. Sweep the loggingType and detectors
+ * parameters to separate the cost of the point value cache and event detectors.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RuntimeInsert extends TsdbBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RuntimeParams {
+
+        /**
+         * Logging type of the points, ON_CHANGE, ALL, NONE, INTERVAL, ON_TS_CHANGE or ON_CHANGE_INTERVAL
+         */
+        @Param("ALL")
+        String loggingType;
+
+        /**
+         * Logging tolerance of the points, applies to the ON_CHANGE logging type
+         */
+        @Param("0")
+        double tolerance;
+
+        /**
+         * Number of high limit event detectors per numeric point. The limit is never exceeded so no events are
+         * raised, but every detector is evaluated for each value.
+         */
+        @Param("0")
+        int detectors;
+
+        /**
+         * Time (ms) to wait for values to become readable before failing
+         */
+        @Param("60000")
+        long readableTimeout;
+
+        int loggingTypeId;
+        final LongAdder runtimeTime = new LongAdder();
+        final LongAdder values = new LongAdder();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.loggingTypeId = DataPointVO.LOGGING_TYPE_CODES.getId(loggingType);
+            if (loggingTypeId < 0) {
+                throw new IllegalArgumentException("Unknown logging type: " + loggingType);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration() {
+            runtimeTime.reset();
+            values.reset();
+            TimedPointValueDao.reset();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() {
+            long count = values.sumThenReset();
+            long runtime = runtimeTime.sumThenReset();
+            var daoTimes = TimedPointValueDao.drainTimes();
+            if (count == 0) {
+                return;
+            }
+
+            BenchmarkMetrics.result("runtimeTimePerValue", runtime / (double) count, "ns");
+            if (!daoTimes.isEmpty()) {
+                long dao = 0;
+                for (var entry : daoTimes.entrySet()) {
+                    BenchmarkMetrics.result("dao." + entry.getKey(), entry.getValue() / (double) count, "ns");
+                    dao += entry.getValue();
+                }
+                BenchmarkMetrics.result("daoTimePerValue", dao / (double) count, "ns");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RuntimePoints {
+
+        List<DataPointVO> points;
+        List<DataPointRT> runtimes;
+        List<PointValueSource> sources;
+        int index = -1;
+        SingleWriterRecorder recorder;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, RuntimeParams params, SetSecurityContext setSecurityContext) throws ExecutionException, InterruptedException {
+            long start = System.nanoTime();
+            long startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            this.points = mango.createMixedDataPoints(mango.totalPoints / mango.threads);
+
+            DataPointDao dataPointDao = Common.getBean(DataPointDao.class);
+            EventDetectorDao eventDetectorDao = Common.getBean(EventDetectorDao.class);
+            Set<String> dataSourceXids = new LinkedHashSet<>();
+            for (DataPointVO point : points) {
+                point.setLoggingType(params.loggingTypeId);
+                point.setTolerance(params.tolerance);
+                dataPointDao.update(point.getId(), point);
+
+                if (point.getPointLocator().getDataType() == DataType.NUMERIC) {
+                    for (int i = 0; i < params.detectors; i++) {
+                        AnalogHighLimitDetectorVO detector = new AnalogHighLimitDetectorVO(point);
+                        detector.setXid(eventDetectorDao.generateUniqueXid());
+                        detector.setName("High limit " + i);
+                        detector.setLimit(Double.MAX_VALUE);
+                        eventDetectorDao.insert(detector);
+                    }
+                }
+                dataSourceXids.add(point.getDataSourceXid());
+            }
+
+            // start the data sources, then the points with their new settings and detectors
+            DataSourceService dataSourceService = Common.getBean(DataSourceService.class);
+            DataPointService dataPointService = Common.getBean(DataPointService.class);
+            for (String xid : dataSourceXids) {
+                dataSourceService.restart(xid, true, false);
+            }
+            this.runtimes = new ArrayList<>(points.size());
+            this.sources = new ArrayList<>(points.size());
+            for (DataPointVO point : points) {
+                dataPointService.setDataPointState(point.getXid(), true, true);
+                DataPointRT rt = Common.runtimeManager.getDataPoint(point.getId());
+                if (rt == null) {
+                    throw new IllegalStateException("Data point is not running: " + point.getXid());
+                }
+                runtimes.add(rt);
+                sources.add(mango.createValueSource(point, startTimestamp, generator));
+            }
+            this.recorder = LatencyHistograms.createRecorder("setPointValue");
+
+            long duration = System.nanoTime() - start;
+            System.out.printf("Thread '%s' started %d points in %.2f seconds.%n",
+                    Thread.currentThread().getName(), points.size(), TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0);
+        }
+
+        /**
+         * Sets a batch of values from the next point's source.
+         *
+         * @return the point the values were set for
+         */
+        int setNext(TsdbMockMango mango, RuntimeParams params) {
+            if (++index >= runtimes.size()) {
+                index = 0;
+            }
+            DataPointRT rt = runtimes.get(index);
+            long batchStart = System.nanoTime();
+            sources.get(index).stream(mango.batchSize).forEach(v -> {
+                long start = System.nanoTime();
+                rt.setPointValue(v.getValue(), null);
+                recorder.recordValue(System.nanoTime() - start);
+            });
+            params.runtimeTime.add(System.nanoTime() - batchStart);
+            params.values.add(mango.batchSize);
+            return index;
+        }
+
+        /**
+         * Polls until the latest value of each of the points is at or after the timestamp of its source. The polling
+         * reads are not included in the DAO times.
+         */
+        void awaitReadable(TsdbMockMango mango, RuntimeParams params, List<Integer> written) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(params.readableTimeout);
+            for (int i : written) {
+                // the source timestamp is the time of the next value to be generated
+                long expected = sources.get(i).getTimestamp().toEpochMilli() - mango.period;
+                DataPointVO point = points.get(i);
+                while (TimedPointValueDao.untimed(() -> mango.pvDao.getLatestPointValue(point)).map(v -> v.getTime() < expected).orElse(true)) {
+                    if (System.nanoTime() > deadline) {
+                        throw new IllegalStateException(String.format("Values for point %s were not readable after %d ms",
+                                point.getXid(), params.readableTimeout));
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void setPointValue(TsdbMockMango mango, RuntimeParams params, RuntimePoints runtimePoints) {
+        for (int i = 0; i < mango.points; i++) {
+            runtimePoints.setNext(mango, params);
+        }
+    }
+
+    /**
+     * Sets the values then waits until they are readable from the DAO, requires loggingType=ALL.
+     */
+    @Benchmark
+    public void endToEnd(TsdbMockMango mango, RuntimeParams params, RuntimePoints runtimePoints) {
+        if (!params.loggingType.equals("ALL")) {
+            throw new IllegalStateException("The endToEnd benchmark requires loggingType=ALL");
+        }
+        List<Integer> written = new ArrayList<>(mango.points);
+        for (int i = 0; i < mango.points; i++) {
+            written.add(runtimePoints.setNext(mango, params));
+        }
+        runtimePoints.awaitReadable(mango, params, written);
+    }
+}
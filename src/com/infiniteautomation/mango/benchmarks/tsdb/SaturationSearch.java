@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Finds the knee of the scaling curve of each benchmark and implementation. Starting at 1 thread, the thread count
+ * (and optionally the points per operation) is doubled at each step, using short iterations, until the throughput
+ * increases by less than saturationPlateau, the latency exceeds saturationMaxLatency or saturationMaxThreads is reached.
+ *
+ * <p>The saturation point is the step with the highest throughput before the search stopped. The scaling curves and
+ * saturation points are written to saturationOutput as JSON. Each step runs 1 warmup and 3 measurement iterations of 10
+ * seconds, unless overridden using the JMH -wi, -w, -i and -r options.</p>
+ *
+ * <p>All benchmarks matched by the include pattern are run at each step, until every one of them has saturated. A
+ * separate curve is found for each combination of the other parameters (e.g. dataTypes), as for {@link ResultStore}.</p>
+ */
+public class SaturationSearch {
+
+    static final String SATURATION_PARAM = "saturation";
+    private static final String IMPLEMENTATION_PARAM = "implementation";
+    private static final TimeValue DEFAULT_ITERATION_TIME = TimeValue.seconds(10);
+    private static final int DEFAULT_WARMUP_ITERATIONS = 1;
+    private static final int DEFAULT_MEASUREMENT_ITERATIONS = 3;
+
+    private final Options options;
+    private final int[] pointsParams;
+    private final int[] batchSizeParams;
+    private final String scale;
+    private final double plateau;
+    private final double maxLatency;
+    private final int maxThreads;
+    private final Path output;
+
+    SaturationSearch(Options options, int[] pointsParams, int[] batchSizeParams) {
+        this.options = options;
+        this.pointsParams = pointsParams;
+        this.batchSizeParams = batchSizeParams;
+        this.scale = TsdbBenchmark.parameter(options, "saturationScale");
+        if (!scale.equals("threads") && !scale.equals("both")) {
+            throw new IllegalStateException("Unknown saturation scale: " + scale);
+        }
+        this.plateau = Double.parseDouble(TsdbBenchmark.parameter(options, "saturationPlateau"));
+        this.maxLatency = Double.parseDouble(TsdbBenchmark.parameter(options, "saturationMaxLatency"));
+        this.maxThreads = TsdbBenchmark.parseCpuMultiplier(TsdbBenchmark.parameter(options, "saturationMaxThreads"));
+        this.output = Path.of(TsdbBenchmark.parameter(options, "saturationOutput"));
+    }
+
+    List<RunResult> run() throws RunnerException {
+        List<RunResult> results = new ArrayList<>();
+        List<Curve> curves = new ArrayList<>();
+        for (String implementation : TsdbBenchmark.parameterValues(options, IMPLEMENTATION_PARAM)) {
+            for (int points : pointsParams) {
+                for (int batchSize : batchSizeParams) {
+                    curves.addAll(search(implementation, points, batchSize, results));
+                }
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("cores", TsdbBenchmark.NUM_CPU_CORES);
+        report.put("scale", scale);
+        report.put("plateau", plateau);
+        report.put("maxLatency", maxLatency);
+        report.put("maxThreads", maxThreads);
+        report.put("curves", curves);
+        try {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output.toFile(), report);
+        } catch (IOException e) {
+            throw new RunnerException("Failed to write " + output, e);
+        }
+
+        // only print the parameters which differ between the curves
+        Set<String> varying = new TreeSet<>();
+        for (Curve curve : curves) {
+            for (var entry : curve.params.entrySet()) {
+                if (curves.stream().anyMatch(c -> !entry.getValue().equals(c.params.get(entry.getKey())))) {
+                    varying.add(entry.getKey());
+                }
+            }
+        }
+        for (Curve curve : curves) {
+            Step saturation = curve.saturation;
+            StringBuilder params = new StringBuilder();
+            for (String key : varying) {
+                params.append(' ').append(key).append('=').append(curve.params.get(key));
+            }
+            System.out.printf("%s %s%s: %s%n", curve.benchmark, curve.implementation, params, saturation == null ? "no result" :
+                    String.format("saturated at threads=%d points=%d, %.3f %s (%s)", saturation.threads, saturation.points,
+                            saturation.score, saturation.scoreUnit, curve.reason));
+        }
+        System.out.printf("Wrote scaling curves to %s%n", output.toAbsolutePath());
+        return results;
+    }
+
+    private Collection<Curve> search(String implementation, int initialPoints, int batchSize, List<RunResult> results) throws RunnerException {
+        Map<String, Curve> curves = new LinkedHashMap<>();
+        int points = initialPoints;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            var opts = TsdbBenchmark.optionsBuilder(options, threads, points, batchSize)
+                    .param(IMPLEMENTATION_PARAM, implementation)
+                    .warmupIterations(options.getWarmupIterations().orElse(DEFAULT_WARMUP_ITERATIONS))
+                    .warmupTime(options.getWarmupTime().orElse(DEFAULT_ITERATION_TIME))
+                    .measurementIterations(options.getMeasurementIterations().orElse(DEFAULT_MEASUREMENT_ITERATIONS))
+                    .measurementTime(options.getMeasurementTime().orElse(DEFAULT_ITERATION_TIME))
+                    .build();
+
+            Collection<RunResult> stepResults = new Runner(opts).run();
+            results.addAll(stepResults);
+
+            Map<String, Step> steps = new LinkedHashMap<>();
+            for (RunResult result : stepResults) {
+                String benchmark = result.getParams().getBenchmark();
+                Map<String, String> params = curveParams(result);
+                String key = benchmark + " " + params;
+                steps.put(key, step(result, threads, points, batchSize));
+                curves.computeIfAbsent(key, k -> new Curve(benchmark, implementation, params, initialPoints, batchSize))
+                        .add(steps.get(key), plateau, maxLatency);
+            }
+            for (var entry : curves.entrySet()) {
+                Curve curve = entry.getValue();
+                if (!steps.containsKey(entry.getKey())) {
+                    // e.g. points * threads exceeds totalPoints
+                    curve.stop("failed");
+                }
+            }
+
+            if (steps.isEmpty() || curves.values().stream().allMatch(c -> c.reason != null)) {
+                break;
+            }
+            if (scale.equals("both")) {
+                points *= 2;
+            }
+        }
+
+        for (Curve curve : curves.values()) {
+            curve.stop("maxThreads");
+        }
+        return curves.values();
+    }
+
+    /**
+     * @return the parameters which distinguish the curves, excluding those varied by the search
+     */
+    private static Map<String, String> curveParams(RunResult result) {
+        Map<String, String> params = ResultStore.resultParams(result.getParams());
+        params.remove(IMPLEMENTATION_PARAM);
+        params.remove(TsdbBenchmark.THREADS_PARAM);
+        params.remove(TsdbBenchmark.POINTS_PARAM);
+        params.remove(TsdbBenchmark.BATCH_SIZE_PARAM);
+        return params;
+    }
+
+    private static Step step(RunResult result, int threads, int points, int batchSize) {
+        Result<?> primary = result.getPrimaryResult();
+        Step step = new Step();
+        step.threads = threads;
+        step.points = points;
+        step.batchSize = batchSize;
+        step.score = primary.getScore();
+        step.scoreError = primary.getScoreError();
+        step.scoreUnit = primary.getScoreUnit();
+
+        // use the highest p99 recorded by LatencyHistograms (us), if any
+        double p99 = result.getSecondaryResults().entrySet().stream()
+                .filter(e -> e.getKey().endsWith(".p99"))
+                .mapToDouble(e -> e.getValue().getScore())
+                .max().orElse(Double.NaN);
+        if (!Double.isNaN(p99)) {
+            step.latency = p99 / 1000;
+            step.latencyType = "p99";
+        } else {
+            // score is values per second, an invocation inserts/reads points * batchSize values on each thread
+            step.latency = threads * (double) points * batchSize / step.score * 1000;
+            step.latencyType = "mean";
+        }
+        return step;
+    }
+
+    public static class Step {
+        public int threads;
+        public int points;
+        public int batchSize;
+        public double score;
+        public double scoreError;
+        public String scoreUnit;
+        /**
+         * ms
+         */
+        public double latency;
+        public String latencyType;
+    }
+
+    public static class Curve {
+        public final String benchmark;
+        public final String implementation;
+        public final Map<String, String> params;
+        public final int initialPoints;
+        public final int batchSize;
+        public final List<Step> steps = new ArrayList<>();
+        /**
+         * step with the highest throughput before the search stopped
+         */
+        public Step saturation;
+        /**
+         * plateau, latency, failed or maxThreads (not saturated within the thread range)
+         */
+        public String reason;
+
+        private Step best;
+
+        Curve(String benchmark, String implementation, Map<String, String> params, int initialPoints, int batchSize) {
+            this.benchmark = benchmark;
+            this.implementation = implementation;
+            this.params = params;
+            this.initialPoints = initialPoints;
+            this.batchSize = batchSize;
+        }
+
+        void add(Step step, double plateau, double maxLatency) {
+            // the curve is recorded in full, even after saturating
+            steps.add(step);
+            if (reason != null) {
+                return;
+            }
+            if (maxLatency > 0 && step.latency > maxLatency) {
+                stop("latency");
+            } else if (best != null && step.score < best.score * (1 + plateau)) {
+                stop("plateau");
+            } else if (best == null || step.score > best.score) {
+                this.best = step;
+            }
+        }
+
+        void stop(String reason) {
+            if (this.reason == null) {
+                this.reason = reason;
+                this.saturation = best;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.infiniteautomation.mango.benchmarks.MockMango.SetSecurityContext;
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Inserts and reads values while cycling through every point, so the working set is all of totalPoints.
+ * Sweep totalPoints (e.g. -p totalPoints=10000,100000,1000000,5000000) to see how each implementation scales with the
+ * number of series. The points are created in parallel, the time taken to create them and the heap used per point are
+ * reported as secondary results.
+ *
+ * <p>maxOpenFiles defaults to a fixed 50000 for these benchmarks (see {@link TsdbBenchmark#BENCHMARK_DEFAULTS}) rather
+ * than a multiple of totalPoints, so that the larger sweeps exceed the ias-tsdb shard file handle cache.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Scaling extends TsdbBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PointSet {
+
+        /**
+         * Number of threads used to create points and insert the initial values, zero uses one thread per CPU core
+         */
+        @Param("0")
+        int setupThreads;
+
+        /**
+         * Number of values inserted per point during setup, must be at least batchSize so that every read queries a
+         * full batchSize range. Zero inserts batchSize values.
+         */
+        @Param("0")
+        int valuesInsertedPerPoint;
+
+        long startTimestamp;
+        long endTimestamp;
+        List<DataPointVO> allPoints;
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, SetSecurityContext setSecurityContext) throws ExecutionException, InterruptedException {
+            if (valuesInsertedPerPoint == 0) {
+                this.valuesInsertedPerPoint = mango.batchSize;
+            } else if (valuesInsertedPerPoint < mango.batchSize) {
+                throw new IllegalStateException("valuesInsertedPerPoint must be at least batchSize");
+            }
+            this.startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            this.endTimestamp = startTimestamp + valuesInsertedPerPoint * mango.period;
+
+            int threads = setupThreads > 0 ? setupThreads : NUM_CPU_CORES;
+            ExecutorService executor = new DelegatingSecurityContextExecutorService(Executors.newFixedThreadPool(threads),
+                    SecurityContextHolder.getContext());
+            try {
+                long heapBefore = ResourceUsage.usedHeap();
+                long start = System.nanoTime();
+                this.allPoints = createPoints(mango, executor, threads);
+                long creationDuration = System.nanoTime() - start;
+                long heapAfter = ResourceUsage.usedHeap();
+
+                start = System.nanoTime();
+                insertValues(mango, executor, threads);
+                long insertDuration = System.nanoTime() - start;
+
+                double creationSeconds = creationDuration / (double) TimeUnit.SECONDS.toNanos(1);
+                BenchmarkMetrics.result("pointCreation.time", creationSeconds, "s");
+                BenchmarkMetrics.result("pointCreation.rate", allPoints.size() / creationSeconds, "points/s");
+                BenchmarkMetrics.result("heapPerPoint", (heapAfter - heapBefore) / (double) allPoints.size(), "B");
+                BenchmarkMetrics.result("initialInsert.time", insertDuration / (double) TimeUnit.SECONDS.toNanos(1), "s");
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        private List<DataPointVO> createPoints(TsdbMockMango mango, ExecutorService executor, int threads) throws ExecutionException, InterruptedException {
+            List<Future<List<DataPointVO>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int count = chunkEnd(mango.totalPoints, threads, i) - chunkStart(mango.totalPoints, threads, i);
+                futures.add(executor.submit(() -> mango.createMixedDataPoints(count)));
+            }
+            List<DataPointVO> points = new ArrayList<>(mango.totalPoints);
+            for (var future : futures) {
+                points.addAll(future.get());
+            }
+            return points;
+        }
+
+        private void insertValues(TsdbMockMango mango, ExecutorService executor, int threads) throws ExecutionException, InterruptedException {
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                var chunk = allPoints.subList(chunkStart(allPoints.size(), threads, i), chunkEnd(allPoints.size(), threads, i));
+                futures.add(executor.submit(() -> {
+                    for (DataPointVO point : chunk) {
+                        var source = mango.createValueSource(point, startTimestamp, generator);
+                        mango.pvDao.savePointValues(source.stream(valuesInsertedPerPoint), valuesInsertedPerPoint);
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    static int chunkStart(int size, int chunks, int index) {
+        return (int) ((long) size * index / chunks);
+    }
+
+    static int chunkEnd(int size, int chunks, int index) {
+        return chunkStart(size, chunks, index + 1);
+    }
+
+    /**
+     * The points of a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Slice {
+
+        List<DataPointVO> slicePoints;
+        List<PointValueSource> sources;
+        int index;
+        int sourceIndex = -1;
+
+        long readStart;
+        long readEnd;
+        /**
+         *  points read within a single invocation
+         */
+        List<DataPointVO> points;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, PointSet pointSet) {
+            int thread = pointSet.threadIndex.getAndIncrement();
+            int size = pointSet.allPoints.size();
+            this.slicePoints = pointSet.allPoints.subList(chunkStart(size, mango.threads, thread), chunkEnd(size, mango.threads, thread));
+
+            // continue inserting after the values inserted during setup
+            var generator = new BrownianPointValueGenerator(pointSet.endTimestamp, mango.period);
+            this.sources = new ArrayList<>(slicePoints.size());
+            for (DataPointVO point : slicePoints) {
+                sources.add(mango.createValueSource(point, pointSet.endTimestamp, generator));
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration(TsdbMockMango mango, PointSet pointSet) {
+            this.readStart = pointSet.startTimestamp;
+            this.readEnd = readStart + mango.batchSize * mango.period;
+        }
+
+        @Setup(Level.Invocation)
+        public void nextRead(TsdbMockMango mango, PointSet pointSet) {
+            int endIndex = index + mango.points;
+            if (endIndex > slicePoints.size()) {
+                this.index = 0;
+                endIndex = mango.points;
+
+                // move to next time range, looping back to start of data
+                this.readStart = readEnd;
+                this.readEnd = readStart + mango.batchSize * mango.period;
+                if (readEnd > pointSet.endTimestamp) {
+                    this.readStart = pointSet.startTimestamp;
+                    this.readEnd = readStart + mango.batchSize * mango.period;
+                }
+            }
+            this.points = slicePoints.subList(index, endIndex);
+            this.index = endIndex;
+        }
+
+        /**
+         * @return the next source, looping back to start if end of list reached
+         */
+        PointValueSource nextSource() {
+            if (++sourceIndex >= sources.size()) {
+                sourceIndex = 0;
+            }
+            return sources.get(sourceIndex);
+        }
+    }
+
+    @Benchmark
+    public void insert(TsdbMockMango mango, Slice slice) {
+        for (int i = 0; i < mango.points; i++) {
+            var source = slice.nextSource();
+            mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+        }
+    }
+
+    @Benchmark
+    public void read(TsdbMockMango mango, Slice slice, Blackhole blackhole) {
+        mango.pvDao.getPointValuesCombined(slice.points, slice.readStart, slice.readEnd, null, TimeOrder.ASCENDING, blackhole::consume);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.FileSystemUtils;
+
+import com.infiniteautomation.mango.benchmarks.MockMango.SetSecurityContext;
+import com.infiniteautomation.mango.benchmarks.tsdb.Scaling.PointSet;
+import com.infiniteautomation.mango.benchmarks.tsdb.Scaling.Slice;
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Benchmarks the ias-tsdb shard file handle cache. The inserts and reads cycle through all of totalPoints (using the
+ * {@link Scaling} states). maxOpenFiles defaults to 0.1X,0.5X for these benchmarks so that shards are continually
+ * opened and closed, see {@link TsdbBenchmark#BENCHMARK_DEFAULTS}.
+ *
+ * <p>The ias-tsdb handle cache does not expose its counters, so the open shard files are sampled from /proc/self/fd
+ * and the open and close rates are estimated from the samples. Files which are opened and closed between samples are
+ * not seen, so the rates are lower bounds. The cache hit ratio compares the opens to the number of shard accesses
+ * made by the benchmark (one per point per operation), so it is an upper bound. The sampling thread competes with
+ * the benchmark threads for CPU, increase fdSampleInterval (or set it to 0 to disable sampling) to reduce its
+ * overhead.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Shards extends TsdbBenchmark {
+
+    private static final Path FD_DIRECTORY = Path.of("/proc/self/fd");
+
+    @State(Scope.Benchmark)
+    public static class FileHandles {
+
+        /**
+         * Interval (ms) between samples of the open shard files, 0 disables sampling
+         */
+        @Param("10")
+        long fdSampleInterval;
+
+        final LongAdder opens = new LongAdder();
+        final LongAdder closes = new LongAdder();
+        final LongAdder accesses = new LongAdder();
+
+        Path shardDirectory;
+        Map<String, Path> openFiles = new HashMap<>();
+        ScheduledExecutorService executor;
+        long iterationStart;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) {
+            if (!mango.implementation.equals("ias-tsdb")) {
+                throw new IllegalStateException("Shard benchmarks require implementation=ias-tsdb");
+            }
+            if (!Files.isDirectory(FD_DIRECTORY)) {
+                throw new IllegalStateException("Shard benchmarks require " + FD_DIRECTORY);
+            }
+            this.shardDirectory = mango.noSqlDirectory().toAbsolutePath();
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration() {
+            opens.reset();
+            closes.reset();
+            accesses.reset();
+            this.iterationStart = System.nanoTime();
+            if (fdSampleInterval > 0) {
+                this.openFiles = sampleOpenFiles();
+                this.executor = Executors.newSingleThreadScheduledExecutor();
+                executor.scheduleWithFixedDelay(this::sample, fdSampleInterval, fdSampleInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() throws InterruptedException {
+            double seconds = (System.nanoTime() - iterationStart) / (double) TimeUnit.SECONDS.toNanos(1);
+            long accessCount = accesses.sumThenReset();
+            BenchmarkMetrics.result("shardAccesses.rate", accessCount / seconds, "accesses/s");
+            if (executor == null) {
+                return;
+            }
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            this.executor = null;
+
+            long openCount = opens.sumThenReset();
+            BenchmarkMetrics.result("shardOpens.rate", openCount / seconds, "opens/s");
+            BenchmarkMetrics.result("shardCloses.rate", closes.sumThenReset() / seconds, "closes/s");
+            if (accessCount > 0) {
+                BenchmarkMetrics.result("shardCache.hitRatio", 1 - Math.min(1, openCount / (double) accessCount), "ratio");
+            }
+        }
+
+        /**
+         * Counts the shards accessed by an operation, each point accessed counts as a single shard access.
+         */
+        void accessed(int points) {
+            accesses.add(points);
+        }
+
+        private void sample() {
+            Map<String, Path> sampled = sampleOpenFiles();
+            for (var entry : sampled.entrySet()) {
+                if (!entry.getValue().equals(openFiles.get(entry.getKey()))) {
+                    opens.increment();
+                }
+            }
+            for (var entry : openFiles.entrySet()) {
+                if (!entry.getValue().equals(sampled.get(entry.getKey()))) {
+                    closes.increment();
+                }
+            }
+            this.openFiles = sampled;
+            BenchmarkMetrics.sample("openShards", sampled.size());
+        }
+
+        /**
+         * @return file descriptor to path, for files in the shard directory
+         */
+        private Map<String, Path> sampleOpenFiles() {
+            Map<String, Path> files = new HashMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(FD_DIRECTORY)) {
+                for (Path fd : stream) {
+                    try {
+                        Path target = Files.readSymbolicLink(fd);
+                        if (target.startsWith(shardDirectory)) {
+                            files.put(fd.getFileName().toString(), target);
+                        }
+                    } catch (IOException e) {
+                        // closed since listing the directory
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Simulates an unclean shutdown before each iteration. The shard directory is copied while values are being
+     * inserted, Mango is stopped, then the shard directory is replaced with the copy so the shards are left as they
+     * were part way through the inserts, and any changes flushed during the shutdown are discarded. Mango is left
+     * stopped, it is started by the {@link #recovery} benchmark.
+     *
+     * <p>The values are inserted after the end of the values inserted by the {@link PointSet}, so they are not read by
+     * the benchmark.</p>
+     */
+    @State(Scope.Benchmark)
+    public static class Recovery {
+
+        List<PointValueSource> sources;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, PointSet pointSet) {
+            if (mango.threads != 1) {
+                throw new IllegalStateException("The recovery benchmark starts Mango, it only supports threads=1");
+            }
+            var generator = new BrownianPointValueGenerator(pointSet.endTimestamp, mango.period);
+            this.sources = new ArrayList<>(pointSet.allPoints.size());
+            for (DataPointVO point : pointSet.allPoints) {
+                sources.add(mango.createValueSource(point, pointSet.endTimestamp, generator));
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void setupIteration(TsdbMockMango mango, PointSet pointSet, SetSecurityContext setSecurityContext) throws IOException, ExecutionException, InterruptedException {
+            Path shardDirectory = mango.noSqlDirectory();
+            Path snapshot = Files.createTempDirectory("shards");
+            try {
+                AtomicBoolean inserting = new AtomicBoolean(true);
+                ExecutorService executor = new DelegatingSecurityContextExecutorService(Executors.newSingleThreadExecutor(),
+                        SecurityContextHolder.getContext());
+                Future<?> inserts = executor.submit(() -> {
+                    for (int i = 0; inserting.get(); i = (i + 1) % sources.size()) {
+                        mango.pvDao.savePointValues(sources.get(i).stream(mango.batchSize), mango.batchSize);
+                    }
+                });
+                try {
+                    FileSystemUtils.copyRecursively(shardDirectory, snapshot);
+                } finally {
+                    inserting.set(false);
+                    executor.shutdown();
+                }
+                inserts.get();
+                mango.stop();
+                FileSystemUtils.deleteRecursively(shardDirectory);
+                FileSystemUtils.copyRecursively(snapshot, shardDirectory);
+            } finally {
+                FileSystemUtils.deleteRecursively(snapshot);
+            }
+
+            long shards;
+            try (Stream<Path> files = Files.walk(shardDirectory)) {
+                shards = files.filter(Files::isRegularFile).count();
+            }
+            BenchmarkMetrics.result("recovery.shards", shards, "#");
+        }
+    }
+
+    @Benchmark
+    public void insert(TsdbMockMango mango, FileHandles fileHandles, Slice slice) {
+        for (int i = 0; i < mango.points; i++) {
+            var source = slice.nextSource();
+            mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+        }
+        fileHandles.accessed(mango.points);
+    }
+
+    @Benchmark
+    public void read(TsdbMockMango mango, FileHandles fileHandles, Slice slice, Blackhole blackhole) {
+        mango.pvDao.getPointValuesCombined(slice.points, slice.readStart, slice.readEnd, null, TimeOrder.ASCENDING, blackhole::consume);
+        fileHandles.accessed(slice.points.size());
+    }
+
+    /**
+     * Starts Mango after a simulated unclean shutdown (see {@link Recovery}) and completes the first read, once per
+     * iteration. The score is the time taken to start Mango and complete the read, the start time alone is reported as
+     * a secondary result.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public void recovery(TsdbMockMango mango, Recovery recovery, Slice slice, Blackhole blackhole) throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        mango.start();
+        BenchmarkMetrics.result("recovery.startTime", (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1), "s");
+        mango.pvDao.getPointValuesCombined(slice.points, slice.readStart, slice.readEnd, null, TimeOrder.ASCENDING, blackhole::consume);
+    }
+}
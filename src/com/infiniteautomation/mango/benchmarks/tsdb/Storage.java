@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.infiniteautomation.mango.pointvalue.generator.BrownianPointValueGenerator;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.pointvalue.TimeOrder;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Writes a fixed dataset of batchSize values for each of totalPoints points (according to the dataTypes mix), then
+ * measures the storage used per value. The benchmark scans the full history of the points, so that the storage used
+ * can be related to the scan throughput. Use the extraProperties parameter to change compression settings.
+ *
+ * <p>The storage used is measured as the growth of the Mango data directory for local databases, or via a table size
+ * query for databases running in a container. For tsl:memory the growth of the heap is measured. The values of each
+ * data type are inserted and measured in turn, so the storage used is also reported per data type.</p>
+ */
+@Fork(value = 1, warmups = 0)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 0, time = 300)
+@Measurement(iterations = 1, time = 300)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Storage extends TsdbBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+
+        long startTimestamp;
+        long endTimestamp;
+        List<DataPointVO> allPoints;
+        final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango) throws ExecutionException, InterruptedException, SQLException {
+            this.startTimestamp = ZonedDateTime.parse(mango.startDate).toInstant().toEpochMilli();
+            this.endTimestamp = startTimestamp + mango.batchSize * mango.period;
+            boolean memory = mango.implementation.equals("tsl:memory");
+
+            // create all the points first, so that only the values are included in the growth
+            Map<DataType, List<DataPointVO>> pointsByType = new LinkedHashMap<>();
+            for (var entry : DataTypeMix.parse(mango.dataTypes).split(mango.totalPoints).entrySet()) {
+                if (entry.getValue() > 0) {
+                    pointsByType.put(entry.getKey(), mango.createDataPoints(entry.getValue(), entry.getKey()));
+                }
+            }
+            this.allPoints = DataTypeMix.interleave(new ArrayList<>(pointsByType.values()));
+            long sizeBefore = memory ? ResourceUsage.usedHeap() : storageSize(mango);
+
+            // insert and measure each data type in turn, so that the growth can be attributed to the data type
+            long insertDuration = 0;
+            long size = sizeBefore;
+            var generator = new BrownianPointValueGenerator(startTimestamp, mango.period);
+            for (var entry : pointsByType.entrySet()) {
+                long start = System.nanoTime();
+                for (DataPointVO point : entry.getValue()) {
+                    var source = mango.createValueSource(point, startTimestamp, generator);
+                    mango.pvDao.savePointValues(source.stream(mango.batchSize), mango.batchSize);
+                }
+                insertDuration += System.nanoTime() - start;
+
+                long typeSizeBefore = size;
+                if (memory) {
+                    size = ResourceUsage.usedHeap();
+                } else {
+                    // flush any buffered values to storage
+                    mango.restart();
+                    size = storageSize(mango);
+                }
+                long typeValues = (long) entry.getValue().size() * mango.batchSize;
+                BenchmarkMetrics.result(entry.getKey() + ".storage.bytes", size - typeSizeBefore, "B");
+                BenchmarkMetrics.result(entry.getKey() + ".storage.bytesPerValue", (size - typeSizeBefore) / (double) typeValues, "B");
+            }
+
+            long values = (long) allPoints.size() * mango.batchSize;
+            BenchmarkMetrics.result("storage.bytes", size - sizeBefore, "B");
+            BenchmarkMetrics.result("storage.bytesPerValue", (size - sizeBefore) / (double) values, "B");
+            BenchmarkMetrics.result("storage.insertRate", values / (insertDuration / (double) TimeUnit.SECONDS.toNanos(1)), "values/s");
+        }
+
+        /**
+         * @return storage used (bytes) by the database
+         */
+        private static long storageSize(TsdbMockMango mango) throws SQLException {
+            if (mango.jdbcContainer == null) {
+                switch (mango.implementation) {
+                    case "sql:mysql":
+                    case "tsl:timescale":
+                    case "tsl:clickhouse":
+                        // an external database, the data directory does not contain its data
+                        throw new IllegalStateException("Can't measure storage size for " + mango.implementation + " when disableContainers=true");
+                    default:
+                        return ResourceUsage.directorySize(Common.MA_DATA_PATH);
+                }
+            }
+
+            try (Connection connection = mango.jdbcContainer.createConnection("");
+                 Statement statement = connection.createStatement()) {
+                switch (mango.implementation) {
+                    case "sql:mysql":
+                        // table statistics are updated lazily
+                        List<String> tables = new ArrayList<>();
+                        try (ResultSet rs = statement.executeQuery("SELECT table_name FROM information_schema.tables WHERE table_schema = DATABASE()")) {
+                            while (rs.next()) {
+                                tables.add(rs.getString(1));
+                            }
+                        }
+                        for (String table : tables) {
+                            statement.execute("ANALYZE TABLE `" + table + "`");
+                        }
+                        return queryLong(statement, "SELECT SUM(data_length + index_length) FROM information_schema.tables WHERE table_schema = DATABASE()");
+                    case "tsl:timescale":
+                        return queryLong(statement, "SELECT pg_database_size(current_database())");
+                    case "tsl:clickhouse":
+                        return queryLong(statement, "SELECT sum(bytes_on_disk) FROM system.parts WHERE active AND database = currentDatabase()");
+                    default:
+                        throw new IllegalStateException("Can't measure storage size for " + mango.implementation);
+                }
+            }
+        }
+
+        private static long queryLong(Statement statement, String sql) throws SQLException {
+            try (ResultSet rs = statement.executeQuery(sql)) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * The points of a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Slice {
+        List<DataPointVO> slicePoints;
+        int index;
+        /**
+         *  points scanned within a single invocation
+         */
+        List<DataPointVO> points;
+
+        @Setup(Level.Trial)
+        public void setup(TsdbMockMango mango, Dataset dataset) {
+            int thread = dataset.threadIndex.getAndIncrement();
+            int size = dataset.allPoints.size();
+            this.slicePoints = dataset.allPoints.subList(Scaling.chunkStart(size, mango.threads, thread), Scaling.chunkEnd(size, mango.threads, thread));
+        }
+
+        @Setup(Level.Invocation)
+        public void nextScan(TsdbMockMango mango) {
+            int endIndex = index + mango.points;
+            if (endIndex > slicePoints.size()) {
+                this.index = 0;
+                endIndex = mango.points;
+            }
+            this.points = slicePoints.subList(index, endIndex);
+            this.index = endIndex;
+        }
+    }
+
+    /**
+     * Reads the full history (batchSize values) of each point.
+     */
+    @Benchmark
+    public void scan(TsdbMockMango mango, Dataset dataset, Slice slice, Blackhole blackhole) {
+        mango.pvDao.getPointValuesPerPoint(slice.points, dataset.startTimestamp, dataset.endTimestamp, null, TimeOrder.ASCENDING, blackhole::consume);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+
+import com.serotonin.m2m2.db.dao.PointValueDao;
+
+/**
+ * Proxies the {@link PointValueDao} bean and accumulates the time spent in each of its methods, across all threads.
+ * Enabled via the timeDaoCalls parameter, so that the time spent in the DAO can be separated from the time spent in
+ * the runtime (e.g. by {@link RuntimeInsert}).
+ *
+ * <p>The proxy is a subclass of the DAO implementation, so beans which inject the DAO by its concrete type still
+ * receive it.</p>
+ */
+final class TimedPointValueDao implements MethodInterceptor {
+
+    private static final Map<String, LongAdder> TIME = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Boolean> UNTIMED = ThreadLocal.withInitial(() -> false);
+
+    private TimedPointValueDao() {
+    }
+
+    /**
+     * @return proxy extending the class of the DAO
+     */
+    static PointValueDao wrap(PointValueDao dao) {
+        ProxyFactory factory = new ProxyFactory(dao);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(new TimedPointValueDao());
+        return (PointValueDao) factory.getProxy(dao.getClass().getClassLoader());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (UNTIMED.get()) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            TIME.computeIfAbsent(invocation.getMethod().getName(), k -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Calls the DAO without recording the time spent, e.g. for polling by the benchmark itself.
+     */
+    static <T> T untimed(Supplier<T> call) {
+        UNTIMED.set(true);
+        try {
+            return call.get();
+        } finally {
+            UNTIMED.set(false);
+        }
+    }
+
+    /**
+     * Resets the accumulated times.
+     */
+    static void reset() {
+        TIME.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * @return total time (ns) spent in each method since the last call, methods which were not called are omitted
+     */
+    static Map<String, Long> drainTimes() {
+        Map<String, Long> times = new HashMap<>();
+        for (var entry : TIME.entrySet()) {
+            long time = entry.getValue().sumThenReset();
+            if (time > 0) {
+                times.put(entry.getKey(), time);
+            }
+        }
+        return times;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.serotonin.m2m2.DataType;
+
+/**
+ * Converts a CSV export of point values to a {@link TraceFile}.
+ *
+ * <p>Each line of the CSV must contain: point identifier (e.g. XID), timestamp (epoch milliseconds or ISO 8601),
+ * data type (NUMERIC, BINARY or MULTISTATE), value. Point identifiers are assigned an index in the order they are
+ * first seen. A header line is skipped, alphanumeric values and lines which cannot be parsed are skipped and counted.</p>
+ *
+ * <p>Usage: {@code java -cp mango-benchmarks.jar com.infiniteautomation.mango.benchmarks.tsdb.TraceConverter input.csv output.trace}</p>
+ */
+public class TraceConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TraceConverter <input.csv> <output.trace>");
+            System.exit(1);
+        }
+        convert(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    public static void convert(Path input, Path output) throws IOException {
+        Map<String, Integer> pointIndexes = new HashMap<>();
+        long skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             TraceWriter writer = new TraceWriter(output)) {
+
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                try {
+                    if (fields.length < 4) {
+                        throw new IllegalArgumentException("Expected 4 fields");
+                    }
+                    long timestamp = parseTimestamp(fields[1].trim());
+                    DataType dataType = DataType.valueOf(fields[2].trim());
+                    double value = parseValue(dataType, fields[3].trim());
+                    int pointIndex = pointIndexes.computeIfAbsent(fields[0].trim(), k -> pointIndexes.size());
+                    writer.write(pointIndex, timestamp, dataType, value);
+                } catch (RuntimeException e) {
+                    // header line
+                    if (!first) {
+                        skipped++;
+                    }
+                }
+                first = false;
+            }
+
+            System.out.printf("Wrote %d records for %d points to %s, skipped %d lines.%n",
+                    writer.getRecordCount(), pointIndexes.size(), output, skipped);
+        }
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return Instant.parse(timestamp).toEpochMilli();
+        }
+    }
+
+    private static double parseValue(DataType dataType, String value) {
+        switch (dataType) {
+            case BINARY:
+                return Boolean.parseBoolean(value) || "1".equals(value) ? 1 : 0;
+            case MULTISTATE:
+                return Integer.parseInt(value);
+            case NUMERIC:
+                return Double.parseDouble(value);
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType);
+        }
+    }
+}
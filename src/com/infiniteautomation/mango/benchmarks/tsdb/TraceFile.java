@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import com.serotonin.m2m2.DataType;
+
+/**
+ * Binary trace file format, used to replay captured point values.
+ *
+ * <p>The file starts with an 8 byte magic header, followed by fixed length big-endian records of
+ * (int pointIndex, long timestamp, byte dataType, double value). Multistate values are stored as doubles,
+ * binary values as 0 or 1. Alphanumeric values are not supported.</p>
+ */
+public final class TraceFile {
+
+    public static final long MAGIC = 0x4D54524143453031L; // "MTRACE01"
+    public static final int HEADER_SIZE = Long.BYTES;
+    public static final int RECORD_SIZE = Integer.BYTES + Long.BYTES + Byte.BYTES + Double.BYTES;
+
+    private static final DataType[] DATA_TYPES = {null, DataType.BINARY, DataType.MULTISTATE, DataType.NUMERIC};
+
+    private TraceFile() {
+    }
+
+    public static byte toCode(DataType dataType) {
+        for (byte i = 1; i < DATA_TYPES.length; i++) {
+            if (DATA_TYPES[i] == dataType) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported data type: " + dataType);
+    }
+
+    public static DataType fromCode(byte code) {
+        if (code <= 0 || code >= DATA_TYPES.length) {
+            throw new IllegalArgumentException("Unknown data type code: " + code);
+        }
+        return DATA_TYPES[code];
+    }
+}
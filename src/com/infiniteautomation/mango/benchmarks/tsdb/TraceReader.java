@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.serotonin.m2m2.DataType;
+
+/**
+ * Reads a {@link TraceFile} via memory-mapped segments. The reader is a cursor, fields of the current record are
+ * accessed via getters so no objects are allocated per record.
+ */
+public class TraceReader implements Closeable {
+
+    /**
+     * Maximum segment size, a whole number of records
+     */
+    private static final long MAX_SEGMENT_SIZE = (Integer.MAX_VALUE / TraceFile.RECORD_SIZE) * (long) TraceFile.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final long recordCount;
+
+    private MappedByteBuffer segment;
+    private long position;
+
+    private int pointIndex;
+    private long timestamp;
+    private byte dataType;
+    private double value;
+
+    public TraceReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size < TraceFile.HEADER_SIZE) {
+            throw new IOException("Not a trace file: " + path);
+        }
+        var header = channel.map(MapMode.READ_ONLY, 0, TraceFile.HEADER_SIZE);
+        if (header.getLong() != TraceFile.MAGIC) {
+            throw new IOException("Not a trace file: " + path);
+        }
+        this.recordCount = (size - TraceFile.HEADER_SIZE) / TraceFile.RECORD_SIZE;
+        rewind();
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Move back to the first record.
+     */
+    public void rewind() throws IOException {
+        this.position = 0;
+        mapSegment(0);
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false if there are no more records
+     */
+    public boolean next() throws IOException {
+        if (position >= recordCount) {
+            return false;
+        }
+        if (!segment.hasRemaining()) {
+            mapSegment(position);
+        }
+        this.pointIndex = segment.getInt();
+        this.timestamp = segment.getLong();
+        this.dataType = segment.get();
+        this.value = segment.getDouble();
+        position++;
+        return true;
+    }
+
+    private void mapSegment(long record) throws IOException {
+        long size = Math.min(MAX_SEGMENT_SIZE, (recordCount - record) * TraceFile.RECORD_SIZE);
+        this.segment = channel.map(MapMode.READ_ONLY, TraceFile.HEADER_SIZE + record * TraceFile.RECORD_SIZE, size);
+    }
+
+    public int getPointIndex() {
+        return pointIndex;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public DataType getDataType() {
+        return TraceFile.fromCode(dataType);
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.serotonin.m2m2.DataType;
+
+/**
+ * Writes a {@link TraceFile}.
+ */
+public class TraceWriter implements Closeable {
+
+    private final DataOutputStream output;
+    private long recordCount;
+
+    public TraceWriter(Path path) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        output.writeLong(TraceFile.MAGIC);
+    }
+
+    public void write(int pointIndex, long timestamp, DataType dataType, double value) throws IOException {
+        output.writeInt(pointIndex);
+        output.writeLong(timestamp);
+        output.writeByte(TraceFile.toCode(dataType));
+        output.writeDouble(value);
+        recordCount++;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long size() {
+        return TraceFile.HEADER_SIZE + recordCount * TraceFile.RECORD_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
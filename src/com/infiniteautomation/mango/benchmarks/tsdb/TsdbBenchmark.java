@@ -5,12 +5,20 @@
 package com.infiniteautomation.mango.benchmarks.tsdb;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.openjdk.jmh.annotations.Level;
@@ -19,10 +27,13 @@ import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.format.OutputFormat;
 import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
 import org.openjdk.jmh.runner.options.CommandLineOptionException;
 import org.openjdk.jmh.runner.options.CommandLineOptions;
 import org.openjdk.jmh.runner.options.Options;
@@ -41,32 +52,85 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.utility.DockerImageName;
 
 import com.infiniteautomation.mango.benchmarks.MockMango;
+import com.infiniteautomation.mango.pointvalue.generator.PointValueGenerator;
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.TerminationReason;
+import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
 
 public abstract class TsdbBenchmark {
 
     public static void main(String[] args) throws RunnerException, CommandLineOptionException {
         CommandLineOptions cmdOptions = new CommandLineOptions(args);
-        runBenchmark(cmdOptions);
+        // fail before running the benchmarks
+        ResultStore.regressionConfidence(cmdOptions);
+        ResultStore.checkBaseline(cmdOptions);
+        var results = runBenchmark(cmdOptions);
+        if (ResultStore.compareToBaseline(cmdOptions, results)) {
+            // fail automated runs
+            System.exit(1);
+        }
     }
 
     public static final String THREADS_PARAM = "threads";
     public static final String POINTS_PARAM = "points";
     public static final String BATCH_SIZE_PARAM = "batchSize";
+    public static final String WRITER_THREADS_PARAM = "writerThreads";
+    public static final String READER_THREADS_PARAM = "readerThreads";
+    public static final String PURGER_THREADS_PARAM = "purgerThreads";
     public static final Collection<String> DEFAULT_THREADS = Collections.singletonList("1C");
+    public static final Collection<String> DEFAULT_WRITER_THREADS = Collections.singletonList("1");
+    public static final Collection<String> DEFAULT_READER_THREADS = Collections.singletonList("1");
     public static final Collection<String> DEFAULT_POINTS = Collections.singletonList("10");
     public static final Collection<String> DEFAULT_BATCH_SIZE = Collections.singletonList("1000");
     public final static int NUM_CPU_CORES = Runtime.getRuntime().availableProcessors();
 
     /**
-     * We cannot parameterize the Threads and OperationsPerInvocation annotations, so we must do it ourselves
-     * programmatically, combine the results, then output them to stdout
+     * We cannot parameterize the Threads, GroupThreads and OperationsPerInvocation annotations, so we must do it ourselves
+     * programmatically, combine the results, then output them to stdout.
+     *
+     * If either of the writerThreads or readerThreads parameters is supplied the thread groups of asymmetric (group)
+     * benchmarks are sized accordingly, and the total number of threads is set to writerThreads + readerThreads. Only
+     * asymmetric benchmarks may be included in this case. The purgerThreads parameter sizes the second group in place
+     * of readerThreads (e.g. for {@link Purge}) so that the stored results name the threads correctly, readerThreads is
+     * then recorded as 0.
+     *
+     * The {@link TsdbProfiler} is always added so that results recorded inside the benchmark (e.g. latency percentiles)
+     * are output alongside the primary results. Add the {@link ResourceProfiler} via -prof to output the I/O, CPU and
+     * disk usage per operation.
+     *
+     * If the saturation parameter is true the threads parameter is ignored, and the thread count is grown until the
+     * throughput plateaus instead, see {@link SaturationSearch}.
+     *
+     * Benchmarks which need Mango to be configured differently are run separately with their own parameter defaults,
+     * see {@link #BENCHMARK_DEFAULTS}.
+     *
+     * The results are written to the resultsDirectory as JSON, see {@link ResultStore}.
      */
-    public static void runBenchmark(Options options) throws RunnerException {
+    public static List<RunResult> runBenchmark(Options options) throws RunnerException {
         List<RunResult> results = new ArrayList<>();
+        for (Options groupOptions : withBenchmarkDefaults(options)) {
+            run(groupOptions, results);
+        }
+
+        // sort the results for more legible output
+        results.sort(RunResult.DEFAULT_SORT_COMPARATOR);
+
+        OutputFormat outputFormat = OutputFormatFactory.createFormatInstance(System.out, VerboseMode.NORMAL);
+        outputFormat.endRun(results);
+
+        ResultStore.save(options, results);
+        return results;
+    }
 
+    /**
+     * Runs the benchmarks included by the options, see {@link #runBenchmark(Options)}.
+     */
+    private static void run(Options options, List<RunResult> results) throws RunnerException {
         int[] threadsParams = options.getParameter(THREADS_PARAM)
                 .orElse(DEFAULT_THREADS)
                 .stream()
@@ -82,28 +146,160 @@ public abstract class TsdbBenchmark {
                 .stream()
                 .mapToInt(Integer::parseInt).toArray();
 
-        for (int threads : threadsParams) {
-            for (int points : pointsParams) {
-                for (int batchSize : batchSizeParams) {
-                    var builder = new OptionsBuilder()
-                            .parent(options)
-                            .threads(threads)
-                            .operationsPerInvocation(points * batchSize)
-                            .param(THREADS_PARAM, Integer.toString(threads))
-                            .param(POINTS_PARAM, Integer.toString(points))
-                            .param(BATCH_SIZE_PARAM, Integer.toString(batchSize));
-
-                    var opts = builder.build();
-                    results.addAll(new Runner(opts).run());
+        boolean purgers = options.getParameter(PURGER_THREADS_PARAM).isPresent();
+        if (purgers && options.getParameter(READER_THREADS_PARAM).isPresent()) {
+            throw new IllegalStateException("The readerThreads and purgerThreads parameters both size the second thread group, set only one of them");
+        }
+
+        boolean asymmetric = options.getParameter(WRITER_THREADS_PARAM).isPresent() ||
+                options.getParameter(READER_THREADS_PARAM).isPresent() || purgers;
+
+        int[] writerThreadsParams = options.getParameter(WRITER_THREADS_PARAM)
+                .orElse(DEFAULT_WRITER_THREADS)
+                .stream()
+                .mapToInt(TsdbBenchmark::parseCpuMultiplier).toArray();
+
+        int[] readerThreadsParams = options.getParameter(purgers ? PURGER_THREADS_PARAM : READER_THREADS_PARAM)
+                .orElse(DEFAULT_READER_THREADS)
+                .stream()
+                .mapToInt(TsdbBenchmark::parseCpuMultiplier).toArray();
+
+        if (asymmetric) {
+            checkGroupBenchmarks(options);
+        }
+
+        if (options.getParameter(SaturationSearch.SATURATION_PARAM).map(v -> v.contains("true")).orElse(false)) {
+            if (asymmetric) {
+                throw new IllegalStateException("Saturation search is not supported for asymmetric benchmarks");
+            }
+            results.addAll(new SaturationSearch(options, pointsParams, batchSizeParams).run());
+        } else {
+            runAll(options, results, threadsParams, pointsParams, batchSizeParams, asymmetric, writerThreadsParams, readerThreadsParams, purgers);
+        }
+    }
+
+    /**
+     * Mango is configured from the {@link TsdbMockMango} parameters before the states of the benchmark are set up, so
+     * benchmarks which need a different configuration declare their own defaults here, keyed by class or benchmark name.
+     * The defaults are applied unless the parameter is set via the command line.
+     */
+    static final Map<String, Map<String, List<String>>> BENCHMARK_DEFAULTS = Map.of(
+            Shards.class.getName(), Map.of("maxOpenFiles", List.of("0.1X", "0.5X")),
+            Scaling.class.getName(), Map.of("maxOpenFiles", List.of("50000")),
+            Shards.class.getName() + ".recovery", Map.of(THREADS_PARAM, List.of("1")),
+            BatchInsert.class.getName(), Map.of("batchInsert", List.of("true")));
+
+    /**
+     * @return options for each group of included benchmarks which share the same defaults, see {@link #BENCHMARK_DEFAULTS}.
+     * The benchmarks of the other groups are excluded.
+     */
+    private static List<Options> withBenchmarkDefaults(Options options) {
+        List<String> includes = options.getIncludes().isEmpty() ? Collections.singletonList(".*") : options.getIncludes();
+        OutputFormat silent = OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT);
+        Map<Map<String, List<String>>, List<String>> groups = new LinkedHashMap<>();
+        for (BenchmarkListEntry benchmark : BenchmarkList.defaultList().find(silent, includes, options.getExcludes())) {
+            Map<String, List<String>> defaults = new HashMap<>(BENCHMARK_DEFAULTS.getOrDefault(benchmark.getUserClassQName(), Collections.emptyMap()));
+            defaults.putAll(BENCHMARK_DEFAULTS.getOrDefault(benchmark.getUsername(), Collections.emptyMap()));
+            defaults.keySet().removeIf(name -> options.getParameter(name).isPresent());
+            groups.computeIfAbsent(defaults, k -> new ArrayList<>()).add(benchmark.getUsername());
+        }
+        if (groups.size() <= 1 && groups.keySet().stream().allMatch(Map::isEmpty)) {
+            return Collections.singletonList(options);
+        }
+
+        List<Options> result = new ArrayList<>();
+        for (var group : groups.entrySet()) {
+            var builder = new OptionsBuilder().parent(options);
+            for (var other : groups.entrySet()) {
+                if (other != group) {
+                    other.getValue().forEach(name -> builder.exclude("^" + Pattern.quote(name) + "$"));
                 }
             }
+            group.getKey().forEach((name, values) -> builder.param(name, values.toArray(new String[0])));
+            result.add(builder.build());
         }
+        return result;
+    }
 
-        // sort the results for more legible output
-        results.sort(RunResult.DEFAULT_SORT_COMPARATOR);
+    /**
+     * The thread groups apply to every benchmark which is run, so fail if the writerThreads, readerThreads or
+     * purgerThreads parameters are set and any of the included benchmarks are not asymmetric (group) benchmarks.
+     */
+    private static void checkGroupBenchmarks(Options options) {
+        List<String> includes = options.getIncludes().isEmpty() ? Collections.singletonList(".*") : options.getIncludes();
+        OutputFormat silent = OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT);
+        List<String> symmetric = BenchmarkList.defaultList().find(silent, includes, options.getExcludes()).stream()
+                .filter(benchmark -> benchmark.getThreadGroups().length < 2)
+                .map(BenchmarkListEntry::getUsername)
+                .collect(Collectors.toList());
+        if (!symmetric.isEmpty()) {
+            throw new IllegalStateException("The writerThreads, readerThreads and purgerThreads parameters only apply to asymmetric benchmarks, exclude " + symmetric);
+        }
+    }
 
-        OutputFormat outputFormat = OutputFormatFactory.createFormatInstance(System.out, VerboseMode.NORMAL);
-        outputFormat.endRun(results);
+    /**
+     * Runs every combination of the threads, points and batchSize parameters.
+     *
+     * @param purgers the readerThreadsParams size the purger threads and are recorded as purgerThreads
+     */
+    private static void runAll(Options options, List<RunResult> results, int[] threadsParams, int[] pointsParams, int[] batchSizeParams,
+                               boolean asymmetric, int[] writerThreadsParams, int[] readerThreadsParams, boolean purgers) throws RunnerException {
+        for (int writerThreads : writerThreadsParams) {
+            for (int readerThreads : readerThreadsParams) {
+                int[] threadsOptions = asymmetric ? new int[] {writerThreads + readerThreads} : threadsParams;
+                for (int threads : threadsOptions) {
+                    for (int points : pointsParams) {
+                        for (int batchSize : batchSizeParams) {
+                            var builder = optionsBuilder(options, threads, points, batchSize)
+                                    .param(WRITER_THREADS_PARAM, Integer.toString(writerThreads))
+                                    .param(READER_THREADS_PARAM, purgers ? "0" : Integer.toString(readerThreads))
+                                    .param(PURGER_THREADS_PARAM, purgers ? Integer.toString(readerThreads) : "0");
+
+                            if (asymmetric) {
+                                builder.threadGroups(writerThreads, readerThreads);
+                            }
+
+                            var opts = builder.build();
+                            results.addAll(new Runner(opts).run());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return options for a single combination of threads, points and batchSize, with the profilers added
+     */
+    static ChainedOptionsBuilder optionsBuilder(Options options, int threads, int points, int batchSize) {
+        return new OptionsBuilder()
+                .parent(options)
+                .threads(threads)
+                .operationsPerInvocation(points * batchSize)
+                .addProfiler(TsdbProfiler.class)
+                .param(THREADS_PARAM, Integer.toString(threads))
+                .param(POINTS_PARAM, Integer.toString(points))
+                .param(BATCH_SIZE_PARAM, Integer.toString(batchSize));
+    }
+
+    /**
+     * @return the first value set via the command line, or the default value of the {@link TsdbMockMango} parameter
+     */
+    static String parameter(Options options, String name) {
+        return parameterValues(options, name).iterator().next();
+    }
+
+    /**
+     * @return the values set via the command line, or the default values of the {@link TsdbMockMango} parameter
+     */
+    static Collection<String> parameterValues(Options options, String name) {
+        return options.getParameter(name).orElseGet(() -> {
+            try {
+                return Arrays.asList(TsdbMockMango.class.getDeclaredField(name).getAnnotation(Param.class).value());
+            } catch (NoSuchFieldException e) {
+                throw new IllegalStateException(e);
+            }
+        });
     }
 
     public static int parseCpuMultiplier(String param) {
@@ -113,7 +309,7 @@ public abstract class TsdbBenchmark {
     public static int parseMultiplier(String param, String suffix, int multiplicand) {
         if (param.endsWith(suffix)) {
             float multiplier = Float.parseFloat(param.substring(0, param.length() - suffix.length()));
-            return (int) multiplier * multiplicand;
+            return (int) (multiplier * multiplicand);
         }
         return Integer.parseInt(param);
     }
@@ -152,6 +348,32 @@ public abstract class TsdbBenchmark {
         @Param({"1"})
         int batchSize;
 
+        /**
+         * Number of writer threads in each thread group of an asymmetric benchmark, e.g. {@link Mixed}.
+         * This default is overridden via {@link TsdbBenchmark#DEFAULT_WRITER_THREADS}.
+         */
+        @Param({"1"})
+        int writerThreads;
+
+        /**
+         * Number of reader threads in each thread group of an asymmetric benchmark, e.g. {@link Mixed}.
+         * This default is overridden via {@link TsdbBenchmark#DEFAULT_READER_THREADS}.
+         */
+        @Param({"1"})
+        int readerThreads;
+
+        /**
+         * Number of purger threads in each thread group of {@link Purge}, sizes the same thread group as readerThreads
+         * (which is then 0). When unset the purger threads are sized by readerThreads and this is 0.
+         */
+        @Param({"0"})
+        int purgerThreads;
+
+        /**
+         * Size of the ias-tsdb shard file handle cache, either a fixed count or a multiple of totalPoints e.g. "2X".
+         * The {@link Shards} benchmarks default to 0.1X,0.5X and the {@link Scaling} benchmarks to 50000, see
+         * {@link TsdbBenchmark#BENCHMARK_DEFAULTS}.
+         */
         @Param({"2X"})
         String maxOpenFiles;
 
@@ -171,12 +393,138 @@ public abstract class TsdbBenchmark {
         @Param({"ERROR"})
         String conflictMode;
 
+        /**
+         * Sets the db.batchDeleteSize property, -1 disables batching of deletes.
+         */
+        @Param("-1")
+        int batchDeleteSize;
+
+        /**
+         * Weighted mix of data types for the points created by the insert and read benchmarks,
+         * e.g. "NUMERIC:70,BINARY:20,MULTISTATE:5,ALPHANUMERIC:5".
+         */
+        @Param("NUMERIC:100")
+        String dataTypes;
+
+        /**
+         * Length of alphanumeric values and annotations, either fixed e.g. "64" or uniformly distributed e.g. "16-256".
+         */
+        @Param("64")
+        String alphanumericLength;
+
+        /**
+         * Fraction of non-numeric values which are annotated, between 0 and 1.
+         */
+        @Param("0")
+        double annotationRate;
+
+        /**
+         * Enables the TSL batch insert (write-behind) pipeline for asynchronous saves.
+         * The {@link BatchInsert} benchmarks default to true, see {@link TsdbBenchmark#BENCHMARK_DEFAULTS}.
+         */
+        @Param("false")
+        boolean batchInsert;
+
+        /**
+         * Maximum number of point values queued by the TSL batch insert pipeline.
+         */
+        @Param("100000")
+        int batchInsertQueueSize;
+
+        /**
+         * Maximum time (ms) a point value is queued before being flushed by the TSL batch insert pipeline.
+         */
+        @Param("1000")
+        long batchInsertFlushInterval;
+
+        /**
+         * Number of point values written in a single batch by the TSL batch insert pipeline.
+         */
+        @Param("10000")
+        int batchInsertSize;
+
+        /**
+         * Wraps the PointValueDao bean so that the time spent in each of its methods is recorded.
+         */
+        @Param("false")
+        boolean timeDaoCalls;
+
+        /**
+         * Additional Mango properties, e.g. compression settings. Semicolon separated, e.g. "key1=value1;key2=value2".
+         */
+        @Param("")
+        String extraProperties;
+
+        /**
+         * Searches for the thread count at which throughput saturates, instead of running each value of the threads
+         * parameter. The saturation parameters are only used by {@link TsdbBenchmark#runBenchmark(Options)}, see
+         * {@link SaturationSearch}.
+         */
+        @Param("false")
+        boolean saturation;
+
+        /**
+         * threads - double the thread count at each step, both - double the thread count and points per operation
+         */
+        @Param("threads")
+        String saturationScale;
+
+        /**
+         * Throughput has plateaued when it increases by less than this fraction between steps.
+         */
+        @Param("0.05")
+        double saturationPlateau;
+
+        /**
+         * Latency bound (ms), the search stops when the p99 latency (or mean latency if not recorded) exceeds it.
+         * 0 disables the bound.
+         */
+        @Param("0")
+        double saturationMaxLatency;
+
+        /**
+         * Maximum thread count to search.
+         */
+        @Param("4C")
+        String saturationMaxThreads;
+
+        /**
+         * File that the scaling curves and saturation points are written to, as JSON.
+         */
+        @Param("saturation.json")
+        String saturationOutput;
+
+        /**
+         * Directory that the results of each run are written to as JSON, empty (the default) to disable. Used by
+         * {@link ResultStore}.
+         */
+        @Param("")
+        String resultsDirectory;
+
+        /**
+         * Results file of a previous run to compare the results against, the exit code is non-zero if any benchmark regressed.
+         */
+        @Param("")
+        String baseline;
+
+        /**
+         * Minimum relative change in score (compared to the baseline) that is considered a regression.
+         */
+        @Param("0.05")
+        double regressionThreshold;
+
+        /**
+         * Confidence level of the t-test used to decide if a change in score is significant.
+         */
+        @Param("0.99")
+        double regressionConfidence;
+
         PointValueDao pvDao;
         JdbcDatabaseContainer<?> jdbcContainer;
 
         public static class BenchmarkConfig {
             @Bean
-            public BeanPostProcessor postProcessor() {
+            public BeanPostProcessor postProcessor(TsdbMockMango tsdbMockMango) {
                 return new BeanPostProcessor() {
                     @Override
                     public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) throws BeansException {
@@ -185,6 +533,9 @@ public abstract class TsdbBenchmark {
                             // this is required since we insert data at epoch 0, i.e. 1970
                             ((SystemSettingsDao) bean).setIntValue(SystemSettingsDao.POINT_DATA_PURGE_PERIODS, 0);
                         }
+                        if (bean instanceof PointValueDao && tsdbMockMango.timeDaoCalls) {
+                            return TimedPointValueDao.wrap((PointValueDao) bean);
+                        }
                         return bean;
                     }
                 };
@@ -214,7 +565,10 @@ public abstract class TsdbBenchmark {
             } else if (implementation.startsWith("tsl:")) {
                 String prefix = "db.tsl." + parts[1] + ".";
                 properties.setProperty(prefix + "enabled", Boolean.toString(true));
-                properties.setProperty(prefix + "batchInsert.enable", "false");
+                properties.setProperty(prefix + "batchInsert.enable", Boolean.toString(batchInsert));
+                properties.setProperty(prefix + "batchInsert.queueSize", Integer.toString(batchInsertQueueSize));
+                properties.setProperty(prefix + "batchInsert.flushInterval", Long.toString(batchInsertFlushInterval));
+                properties.setProperty(prefix + "batchInsert.batchSize", Integer.toString(batchInsertSize));
                 properties.setProperty("db.tsl.memory.seriesValueLimit", "-1");
                 properties.setProperty(prefix + "conflictMode", conflictMode);
                 if (jdbcContainer != null) {
@@ -231,12 +585,21 @@ public abstract class TsdbBenchmark {
             properties.setProperty("internal.monitor.diskUsage.enabled", "false");
             properties.setProperty("internal.monitor.enableOperatingSystemInfo", "false");
 
-            // disable batch delete size; so it doesn't take forever to delete point values from SQL on lifecycle terminate
-            properties.setProperty("db.batchDeleteSize", "-1");
+            // batch delete size is disabled by default; so it doesn't take forever to delete point values from SQL on lifecycle terminate
+            properties.setProperty("db.batchDeleteSize", Integer.toString(batchDeleteSize));
             // don't event bother deleting point values after test, containers are terminated, temp directory is removed
             properties.setProperty("tests.after.deleteAllPointData", "false");
             properties.setProperty("db.batchSize", "1000");
 
+            for (String property : extraProperties.split(";")) {
+                int separator = property.indexOf('=');
+                if (separator > 0) {
+                    properties.setProperty(property.substring(0, separator).trim(), property.substring(separator + 1).trim());
+                } else if (!property.isBlank()) {
+                    throw new IllegalStateException("Invalid property: " + property);
+                }
+            }
+
             // load the NoSQL module defs
             loadModules();
 
@@ -263,6 +626,56 @@ public abstract class TsdbBenchmark {
             }
         }
 
+        /**
+         * Creates points according to the {@link #dataTypes} mix, the data types are interleaved evenly through the list.
+         */
+        List<DataPointVO> createMixedDataPoints(int count) throws ExecutionException, InterruptedException {
+            var counts = DataTypeMix.parse(dataTypes).split(count);
+            List<List<DataPointVO>> pointsByType = new ArrayList<>();
+            for (var entry : counts.entrySet()) {
+                if (entry.getValue() > 0) {
+                    pointsByType.add(createDataPoints(entry.getValue(), entry.getKey()));
+                }
+            }
+            return DataTypeMix.interleave(pointsByType);
+        }
+
+        /**
+         * Creates points with the given data type.
+         */
+        List<DataPointVO> createDataPoints(int count, DataType dataType) throws ExecutionException, InterruptedException {
+            List<DataPointVO> points = createDataPoints(count, Collections.emptyMap());
+            if (dataType != DataType.NUMERIC) {
+                DataPointDao dataPointDao = Common.getBean(DataPointDao.class);
+                for (DataPointVO point : points) {
+                    point.setPointLocator(new MockPointLocatorVO(dataType, true));
+                    dataPointDao.update(point.getId(), point);
+                }
+            }
+            return points;
+        }
+
+        /**
+         * @return a source of values matching the data type of the point, numeric points use the Brownian generator
+         */
+        PointValueSource createValueSource(DataPointVO point, long startTimestamp, PointValueGenerator generator) {
+            if (point.getPointLocator().getDataType() == DataType.NUMERIC) {
+                return new LivePointValueSource(point, generator.createSupplier(point));
+            }
+            return new TypedPointValueSource(point, startTimestamp, period, alphanumericLength, annotationRate);
+        }
+
+        /**
+         * The total points are split between the writer threads of all thread groups, readers query the points
+         * written by the writers in their own group.
+         *
+         * @return number of points created by each writer thread of an asymmetric benchmark
+         */
+        int pointsPerWriter() {
+            int groups = Math.max(1, threads / (writerThreads + readerThreads + purgerThreads));
+            return totalPoints / (groups * writerThreads);
+        }
+
         @Override
         public void setupTrial(SetSecurityContext setSecurityContext) throws Exception {
             if (!disableContainers) {
@@ -293,6 +706,38 @@ public abstract class TsdbBenchmark {
             super.setupTrial(setSecurityContext);
         }
 
+        /**
+         * Terminates and re-initializes the Mango lifecycle, the database, data directory and containers are kept.
+         * Caches held by Mango (e.g. open ias-tsdb shards) are therefore cold after a restart.
+         * Note that the tsl:memory implementation loses its data.
+         */
+        void restart() throws ExecutionException, InterruptedException {
+            stop();
+            start();
+        }
+
+        /**
+         * Terminates the Mango lifecycle, see {@link #restart()}.
+         */
+        void stop() {
+            lifecycle.terminate(TerminationReason.SHUTDOWN);
+        }
+
+        /**
+         * Initializes the Mango lifecycle after it was stopped, see {@link #restart()}.
+         */
+        void start() throws ExecutionException, InterruptedException {
+            lifecycle.initialize().get();
+            this.pvDao = Common.getBean(PointValueDao.class);
+        }
+
+        /**
+         * @return directory containing the ias-tsdb shards
+         */
+        Path noSqlDirectory() {
+            return Common.MA_DATA_PATH.resolve(properties.getProperty("db.nosql.location", "databases/mangoTSDB"));
+        }
+
         @Override
         public void tearDownTrial() throws IOException, SQLException {
             super.tearDownTrial();
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+
+/**
+ * Runs inside the forked benchmark JVM and adds the results recorded by the benchmarks themselves to the
+ * {@link org.openjdk.jmh.results.RunResult} as secondary results.
+ */
+public class TsdbProfiler implements InternalProfiler {
+
+    private long iterationStart;
+
+    @Override
+    public String getDescription() {
+        return "Reports results recorded by the TSDB benchmarks, e.g. latency percentiles and counters";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        this.iterationStart = System.nanoTime();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+        List<Result> results = new ArrayList<>();
+        results.addAll(LatencyHistograms.drainResults());
+        results.addAll(BenchmarkMetrics.drainResults(System.nanoTime() - iterationStart));
+        return results;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.serotonin.m2m2.DataType;
+import com.serotonin.m2m2.db.dao.BatchPointValue;
+import com.serotonin.m2m2.db.dao.BatchPointValueImpl;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Generates values matching the data type of the point, with optional annotations.
+ */
+public class TypedPointValueSource implements PointValueSource {
+
+    public static final int MULTISTATE_STATES = 8;
+
+    private static final int CHARACTER_POOL_SIZE = 1 << 16;
+    private static final String CHARACTER_POOL = createCharacterPool();
+
+    private final DataPointVO point;
+    private final DataType dataType;
+    private final long period;
+    private final int minLength;
+    private final int maxLength;
+    private final double annotationRate;
+    private final Random random;
+
+    private long timestamp;
+    private double lastNumeric;
+
+    /**
+     * @param alphanumericLength length of alphanumeric values, either a fixed length e.g. "64", or a uniformly
+     *                           distributed range e.g. "16-256"
+     * @param annotationRate fraction of values which are annotated, between 0 and 1
+     */
+    public TypedPointValueSource(DataPointVO point, long startTimestamp, long period, String alphanumericLength, double annotationRate) {
+        this.point = point;
+        this.dataType = point.getPointLocator().getDataType();
+        this.timestamp = startTimestamp;
+        this.period = period;
+        this.annotationRate = annotationRate;
+        this.random = new Random(point.getId());
+
+        String[] lengths = alphanumericLength.split("-");
+        this.minLength = Integer.parseInt(lengths[0].trim());
+        this.maxLength = lengths.length > 1 ? Integer.parseInt(lengths[1].trim()) : minLength;
+        if (minLength < 0 || maxLength < minLength || maxLength > CHARACTER_POOL_SIZE) {
+            throw new IllegalArgumentException("Invalid alphanumeric length: " + alphanumericLength);
+        }
+    }
+
+    @Override
+    public DataPointVO getPoint() {
+        return point;
+    }
+
+    @Override
+    public Stream<? extends BatchPointValue> stream(int limit) {
+        return Stream.generate(this::next).limit(limit);
+    }
+
+    @Override
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(timestamp);
+    }
+
+    @Override
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp.toEpochMilli();
+    }
+
+    private BatchPointValue next() {
+        DataValue value = nextValue();
+        PointValueTime pvt;
+        if (annotationRate > 0 && random.nextDouble() < annotationRate) {
+            String annotation = randomString(minLength, maxLength);
+            pvt = new AnnotatedPointValueTime(value, timestamp, new TranslatableMessage("common.default", annotation));
+        } else {
+            pvt = new PointValueTime(value, timestamp);
+        }
+        this.timestamp += period;
+        return new BatchPointValueImpl(point, pvt);
+    }
+
+    private DataValue nextValue() {
+        switch (dataType) {
+            case BINARY:
+                return BinaryValue.getInstance(random.nextBoolean());
+            case MULTISTATE:
+                return new MultistateValue(random.nextInt(MULTISTATE_STATES));
+            case ALPHANUMERIC:
+                return new AlphanumericValue(randomString(minLength, maxLength));
+            case NUMERIC:
+                this.lastNumeric += random.nextGaussian();
+                return new NumericValue(lastNumeric);
+            default:
+                throw new IllegalStateException("Unsupported data type: " + dataType);
+        }
+    }
+
+    private String randomString(int minLength, int maxLength) {
+        int length = minLength == maxLength ? minLength : minLength + random.nextInt(maxLength - minLength + 1);
+        int offset = random.nextInt(CHARACTER_POOL_SIZE - length + 1);
+        return CHARACTER_POOL.substring(offset, offset + length);
+    }
+
+    private static String createCharacterPool() {
+        String characters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 ";
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder(CHARACTER_POOL_SIZE);
+        for (int i = 0; i < CHARACTER_POOL_SIZE; i++) {
+            builder.append(characters.charAt(random.nextInt(characters.length())));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2021 Radix IoT LLC. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.benchmarks.tsdb;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks between 0 (most popular) and size - 1 (least popular), where the probability of rank k is proportional
+ * to 1 / (k + 1)^skew. A skew of 0 is uniform, larger values concentrate more of the samples on the first ranks.
+ */
+final class ZipfianDistribution {
+
+    /**
+     * cumulative (unnormalized) probability of each rank
+     */
+    private final double[] cumulative;
+
+    ZipfianDistribution(int size, double skew) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be greater than zero");
+        }
+        if (skew < 0) {
+            throw new IllegalArgumentException("Skew must not be negative");
+        }
+        this.cumulative = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+    }
+
+    int sample(SplittableRandom random) {
+        double value = random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    /**
+     * @return share of the samples for the first count ranks
+     */
+    double share(int count) {
+        return cumulative[Math.min(count, cumulative.length) - 1] / cumulative[cumulative.length - 1];
+    }
+}